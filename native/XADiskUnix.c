@@ -5,6 +5,10 @@ This source code is being made available to the public under the terms specified
 "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
 */
 
+#ifdef __linux__
+#define _GNU_SOURCE
+#endif
+
 #include<jni.h>
 
 #include <sys/types.h>
@@ -14,6 +18,18 @@ This source code is being made available to the public under the terms specified
 #include <stdio.h>
 #include <stdlib.h>
 #include <errno.h>
+#include <unistd.h>
+
+#ifdef __linux__
+#include <sys/ioctl.h>
+#include <sys/syscall.h>
+#include <linux/fs.h>
+#endif
+
+#define COPY_NOT_DONE 0
+#define COPIED_BY_REFLINK 1
+#define COPIED_BY_COPY_FILE_RANGE 2
+#define COPY_FAILED -1
 
 JNIEXPORT jboolean JNICALL Java_org_xadisk_filesystem_DurableDiskSession_forceDirectories
 (JNIEnv *env, jclass callingMethod, jobjectArray dirPathStrings) {
@@ -45,3 +61,126 @@ JNIEXPORT jboolean JNICALL Java_org_xadisk_filesystem_DurableDiskSession_forceDi
     return JNI_TRUE;
 }
 
+/*
+Forces the data of the given files, and then the given directories, in one crossing. A file which does not
+exist anymore is skipped, as its data is not needed. On Linux, the writeback of all the files is started
+before waiting for any of them, so that the disk works on them together.
+*/
+JNIEXPORT jboolean JNICALL Java_org_xadisk_filesystem_DurableDiskSession_forceFilesAndDirectories
+(JNIEnv *env, jclass callingMethod, jobjectArray filePathStrings, jobjectArray dirPathStrings) {
+
+    int totalFiles = (*env) -> GetArrayLength(env, filePathStrings);
+    int *files = NULL;
+    int i;
+    jboolean success = JNI_TRUE;
+
+    if (totalFiles > 0) {
+        files = (int *) malloc(totalFiles * sizeof (int));
+        if (files == NULL) {
+            return JNI_FALSE;
+        }
+    }
+
+    for (i = 0; i < totalFiles; i++) {
+        jstring filePathString = (*env)->GetObjectArrayElement(env, filePathStrings, i);
+
+        const char *filePath = (*env)->GetStringUTFChars(
+                env, filePathString, NULL);
+
+        files[i] = open(filePath, O_RDONLY);
+        if (files[i] == -1 && errno != ENOENT) {
+            printf("XADisk Error [Native Module] File %s could not be opened.\n", filePath);
+            success = JNI_FALSE;
+        }
+#ifdef SYNC_FILE_RANGE_WRITE
+        if (files[i] != -1) {
+            sync_file_range(files[i], 0, 0, SYNC_FILE_RANGE_WRITE);
+        }
+#endif
+        (*env)->ReleaseStringUTFChars(env, filePathString, filePath);
+        (*env)->DeleteLocalRef(env, filePathString);
+    }
+
+    for (i = 0; i < totalFiles; i++) {
+        if (files[i] == -1) {
+            continue;
+        }
+        if (fdatasync(files[i]) == -1) {
+            printf("XADisk Error [Native Module] File flush failed.\n");
+            success = JNI_FALSE;
+        }
+        close(files[i]);
+    }
+    free(files);
+
+    if (success == JNI_FALSE) {
+        return JNI_FALSE;
+    }
+    return Java_org_xadisk_filesystem_DurableDiskSession_forceDirectories(env, callingMethod, dirPathStrings);
+}
+
+/*
+Copies the contents of the source file into the empty destination file without reading them into the process,
+first by sharing the extents of the source file (a reflink, on file systems supporting it), and then through
+copy_file_range. The destination is forced before returning. If neither is possible, the destination is left
+empty and COPY_NOT_DONE is returned, so that the caller copies the contents itself.
+*/
+JNIEXPORT jint JNICALL Java_org_xadisk_filesystem_DurableDiskSession_copyFileContents
+(JNIEnv *env, jclass callingMethod, jstring srcPathString, jstring destPathString) {
+
+    const char *srcPath = (*env)->GetStringUTFChars(env, srcPathString, NULL);
+    const char *destPath = (*env)->GetStringUTFChars(env, destPathString, NULL);
+    int src = open(srcPath, O_RDONLY);
+    int dest = open(destPath, O_WRONLY);
+    jint copyMethod = COPY_NOT_DONE;
+    off_t srcSize = -1;
+
+    (*env)->ReleaseStringUTFChars(env, srcPathString, srcPath);
+    (*env)->ReleaseStringUTFChars(env, destPathString, destPath);
+
+    /* the size is taken through lseek, and not fstat, so that the library links against the older glibc too. */
+    if (src != -1) {
+        srcSize = lseek(src, 0, SEEK_END);
+    }
+
+    if (src != -1 && dest != -1 && srcSize != -1) {
+#ifdef FICLONE
+        if (ioctl(dest, FICLONE, src) == 0) {
+            copyMethod = COPIED_BY_REFLINK;
+        }
+#endif
+#ifdef __NR_copy_file_range
+        if (copyMethod == COPY_NOT_DONE) {
+            long long srcOffset = 0;
+            long long destOffset = 0;
+            off_t remaining = srcSize;
+            while (remaining > 0) {
+                ssize_t copied = syscall(__NR_copy_file_range, src, &srcOffset, dest, &destOffset,
+                        (size_t) remaining, 0);
+                if (copied <= 0) {
+                    break;
+                }
+                remaining -= copied;
+            }
+            if (remaining == 0) {
+                copyMethod = COPIED_BY_COPY_FILE_RANGE;
+            } else if (ftruncate(dest, 0) == -1) {
+                copyMethod = COPY_FAILED;
+            }
+        }
+#endif
+        if (copyMethod > COPY_NOT_DONE && fdatasync(dest) == -1) {
+            printf("XADisk Error [Native Module] File flush failed.\n");
+            copyMethod = COPY_FAILED;
+        }
+    }
+
+    if (src != -1) {
+        close(src);
+    }
+    if (dest != -1) {
+        close(dest);
+    }
+    return copyMethod;
+}
+
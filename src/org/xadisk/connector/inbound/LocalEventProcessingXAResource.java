@@ -63,7 +63,7 @@ public class LocalEventProcessingXAResource implements XAResource {
             //not expected.
         }
         try {
-            xaFileSystem.getTheGatheringDiskWriter().transactionPrepareCompletesForEventDequeue(xidImpl, event);
+            xaFileSystem.getTheGatheringDiskWriter(xidImpl).transactionPrepareCompletesForEventDequeue(xidImpl, event);
         } catch (IOException ioe) {
             xaFileSystem.notifySystemFailureAndContinue(ioe);
             throw MiscUtils.createXAExceptionWithCause(XAException.XAER_RMFAIL, ioe);
@@ -84,8 +84,8 @@ public class LocalEventProcessingXAResource implements XAResource {
             events.add(eventForTransaction);
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xidImpl, events,
                     TransactionLogEntry.EVENT_DEQUEUE));
-            xaFileSystem.getTheGatheringDiskWriter().forceLog(xidImpl, logEntryBytes);
-            xaFileSystem.getTheGatheringDiskWriter().transactionCompletes(xidImpl, true);
+            xaFileSystem.getTheGatheringDiskWriter(xidImpl).forceLog(xidImpl, logEntryBytes);
+            xaFileSystem.getTheGatheringDiskWriter(xidImpl).transactionCompletes(xidImpl, true);
             if (isCreatedForRecovery) {
                 xaFileSystem.getRecoveryWorker().cleanupTransactionInfo(xidImpl);
             }
@@ -101,7 +101,7 @@ public class LocalEventProcessingXAResource implements XAResource {
     public void rollback(Xid xid) throws XAException {
         TransactionInformation xidImpl = mapToInternalXid(xid);
         try {
-            xaFileSystem.getTheGatheringDiskWriter().transactionCompletes(xidImpl, false);
+            xaFileSystem.getTheGatheringDiskWriter(xidImpl).transactionCompletes(xidImpl, false);
             if (isCreatedForRecovery) {
                 xaFileSystem.getRecoveryWorker().cleanupTransactionInfo(xidImpl);
             }
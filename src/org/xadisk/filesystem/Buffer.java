@@ -18,6 +18,9 @@ public class Buffer {
     private final boolean hasItsOwnBytes;
     public final boolean isDirect;
     private volatile OnDiskInfo onDiskInfo = null;
+    //for a clone of a buffer already on disk; the session tracks only the original, and updates its location
+    //when the log records are relocated, so the clone always reads the location from the original.
+    private Buffer onDiskOriginal = null;
     private long fileContentPosition;
     private int fileContentLength;
     private int headerLength;
@@ -25,6 +28,7 @@ public class Buffer {
     private int logChannelIndex = -1;
     private final NativeXAFileSystem xaFileSystem;
     private volatile boolean memorySynchTrigger = true;
+    private ByteBuffer compressedLogEntry;
 
     public Buffer(int bufferSize, boolean isDirect, NativeXAFileSystem xaFileSystem) {
         this.xaFileSystem = xaFileSystem;
@@ -102,6 +106,9 @@ public class Buffer {
     }
 
     public OnDiskInfo getOnDiskInfo() {
+        if (onDiskOriginal != null) {
+            return onDiskOriginal.getOnDiskInfo();
+        }
         return onDiskInfo;
     }
 
@@ -129,11 +136,19 @@ public class Buffer {
         this.headerLength = headerLength;
     }
 
+    public ByteBuffer getCompressedLogEntry() {
+        return compressedLogEntry;
+    }
+
+    public void setCompressedLogEntry(ByteBuffer compressedLogEntry) {
+        this.compressedLogEntry = compressedLogEntry;
+    }
+
     public Buffer createReadOnlyClone() {
         Buffer clone = new Buffer(this.xaFileSystem);
         ByteBuffer referenceToByteBuffer = this.buffer;
         if (referenceToByteBuffer == null) {
-            clone.onDiskInfo = this.onDiskInfo;
+            clone.onDiskOriginal = this.onDiskOriginal == null ? this : this.onDiskOriginal;
         } else {
             clone.buffer = referenceToByteBuffer.asReadOnlyBuffer();
         }
@@ -144,15 +159,25 @@ public class Buffer {
     }
 
     public int regenerateContentFromDisk(ByteBuffer target, int offsetToReadFrom) throws IOException {
+        OnDiskInfo onDiskInfo = getOnDiskInfo();
         int logIndex = onDiskInfo.getLogIndex();
         if (logChannelIndex != logIndex) {
             if (logFileChannel != null) {
                 logFileChannel.close();
             }
-            FileInputStream logIS = new FileInputStream(xaFileSystem.getTransactionLogFileBaseName() + "_" + logIndex);
+            FileInputStream logIS = new FileInputStream(xaFileSystem.getTransactionLogFile(logIndex));
             logFileChannel = logIS.getChannel();
             logChannelIndex = logIndex;
         }
+        if (TransactionLogEntry.isCompressedFileAppend(logFileChannel, onDiskInfo.getLocation())) {
+            byte content[] = TransactionLogEntry.readCompressedFileAppendContent(logFileChannel,
+                    onDiskInfo.getLocation());
+            target.limit(fileContentLength - offsetToReadFrom);
+            int numRead = target.remaining();
+            target.put(content, offsetToReadFrom, numRead);
+            target.flip();
+            return numRead;
+        }
         logFileChannel.position(onDiskInfo.getLocation() + headerLength + offsetToReadFrom);
         target.limit(fileContentLength - offsetToReadFrom);
         int numRead = 0;
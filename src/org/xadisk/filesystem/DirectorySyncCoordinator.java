@@ -0,0 +1,190 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//shares the directory syncs among the sessions of an XADisk instance. A request for a directory is satisfied
+//by any sync of that directory which starts after the request; so, while one sync of a directory is going on,
+//all the requests coming for it are served by the single sync issued after it.
+class DirectorySyncCoordinator {
+
+    private final ConcurrentHashMap<String, DirectorySync> directorySyncs = new ConcurrentHashMap<String, DirectorySync>();
+    private final AtomicLong issuedSyncs = new AtomicLong(0);
+    private final AtomicLong coalescedSyncs = new AtomicLong(0);
+
+    void forceDirectories(String directoryPaths[]) throws IOException {
+        forceFilesAndDirectories(new String[0], directoryPaths);
+    }
+
+    //the files are not shared among the sessions; they are forced in the same native call as the directories
+    //this thread has to sync.
+    void forceFilesAndDirectories(String filePaths[], String directoryPaths[]) throws IOException {
+        ArrayList<DirectorySync> syncsToIssue = new ArrayList<DirectorySync>(directoryPaths.length);
+        ArrayList<DirectorySync> syncsToAwait = new ArrayList<DirectorySync>(directoryPaths.length);
+        ArrayList<Long> sequencesToAwait = new ArrayList<Long>(directoryPaths.length);
+        try {
+            for (String directoryPath : directoryPaths) {
+                DirectorySync directorySync = acquireDirectorySync(directoryPath);
+                try {
+                    if (directorySync.syncInProgress) {
+                        //the ongoing sync may have started before the changes we need to force.
+                        syncsToAwait.add(directorySync);
+                        sequencesToAwait.add(directorySync.startedSequence + 1);
+                    } else {
+                        directorySync.syncInProgress = true;
+                        directorySync.startedSequence++;
+                        syncsToIssue.add(directorySync);
+                    }
+                } finally {
+                    directorySync.lock.unlock();
+                }
+            }
+            if (!syncsToIssue.isEmpty() || filePaths.length > 0) {
+                if (!issueSyncs(syncsToIssue, filePaths)) {
+                    throw new IOException("Fatal Error: Directory changes could not be forced-to-disk during transaction commit.");
+                }
+            }
+            for (int i = 0; i < syncsToAwait.size(); i++) {
+                awaitSync(syncsToAwait.get(i), sequencesToAwait.get(i));
+            }
+        } finally {
+            for (DirectorySync directorySync : syncsToIssue) {
+                releaseDirectorySync(directorySync);
+            }
+            for (DirectorySync directorySync : syncsToAwait) {
+                releaseDirectorySync(directorySync);
+            }
+        }
+    }
+
+    private boolean issueSyncs(ArrayList<DirectorySync> directorySyncsToIssue, String filePaths[]) {
+        String paths[] = new String[directorySyncsToIssue.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = directorySyncsToIssue.get(i).directoryPath;
+        }
+        boolean success = false;
+        try {
+            success = DurableDiskSession.forceFileAndDirectoryPaths(filePaths, paths);
+            issuedSyncs.addAndGet(paths.length);
+        } finally {
+            for (DirectorySync directorySync : directorySyncsToIssue) {
+                directorySync.lock.lock();
+                try {
+                    directorySync.completedSequence = directorySync.startedSequence;
+                    if (success) {
+                        directorySync.successfulSequence = directorySync.startedSequence;
+                    }
+                    directorySync.syncInProgress = false;
+                    directorySync.syncCompleted.signalAll();
+                } finally {
+                    directorySync.lock.unlock();
+                }
+            }
+        }
+        return success;
+    }
+
+    private void awaitSync(DirectorySync directorySync, long sequence) throws IOException {
+        boolean issueSync = false;
+        directorySync.lock.lock();
+        try {
+            while (directorySync.completedSequence < sequence) {
+                if (!directorySync.syncInProgress) {
+                    //no other waiter has issued the sync we need; the other waiters will share ours.
+                    directorySync.syncInProgress = true;
+                    directorySync.startedSequence++;
+                    issueSync = true;
+                    break;
+                }
+                directorySync.syncCompleted.awaitUninterruptibly();
+            }
+        } finally {
+            directorySync.lock.unlock();
+        }
+        if (issueSync) {
+            ArrayList<DirectorySync> directorySyncsToIssue = new ArrayList<DirectorySync>(1);
+            directorySyncsToIssue.add(directorySync);
+            issueSyncs(directorySyncsToIssue, new String[0]);
+        } else {
+            coalescedSyncs.incrementAndGet();
+        }
+        directorySync.lock.lock();
+        try {
+            if (directorySync.successfulSequence < sequence) {
+                throw new IOException("Fatal Error: Directory changes could not be forced-to-disk during transaction commit.");
+            }
+        } finally {
+            directorySync.lock.unlock();
+        }
+    }
+
+    //returns with the lock of the directory held.
+    private DirectorySync acquireDirectorySync(String directoryPath) {
+        while (true) {
+            DirectorySync directorySync = directorySyncs.get(directoryPath);
+            if (directorySync == null) {
+                directorySync = new DirectorySync(directoryPath);
+                DirectorySync existingDirectorySync = directorySyncs.putIfAbsent(directoryPath, directorySync);
+                if (existingDirectorySync != null) {
+                    directorySync = existingDirectorySync;
+                }
+            }
+            directorySync.lock.lock();
+            if (!directorySync.retired) {
+                directorySync.numUsers++;
+                return directorySync;
+            }
+            directorySync.lock.unlock();
+        }
+    }
+
+    //the entries of directories not being synced are removed, so that the map does not keep every directory
+    //ever synced.
+    private void releaseDirectorySync(DirectorySync directorySync) {
+        directorySync.lock.lock();
+        try {
+            directorySync.numUsers--;
+            if (directorySync.numUsers == 0) {
+                directorySync.retired = true;
+                directorySyncs.remove(directorySync.directoryPath, directorySync);
+            }
+        } finally {
+            directorySync.lock.unlock();
+        }
+    }
+
+    long getIssuedSyncCount() {
+        return issuedSyncs.get();
+    }
+
+    long getCoalescedSyncCount() {
+        return coalescedSyncs.get();
+    }
+
+    private static class DirectorySync {
+
+        private final String directoryPath;
+        private final ReentrantLock lock = new ReentrantLock(false);
+        private final Condition syncCompleted = lock.newCondition();
+        private boolean syncInProgress = false;
+        private long startedSequence = 0;
+        private long completedSequence = 0;
+        private long successfulSequence = 0;
+        private int numUsers = 0;
+        private boolean retired = false;
+
+        private DirectorySync(String directoryPath) {
+            this.directoryPath = directoryPath;
+        }
+    }
+}
@@ -20,10 +20,23 @@ import org.xadisk.filesystem.utilities.MiscUtils;
 public class DurableDiskSession {
 
     private Set<File> directoriesToForce = new HashSet<File>();
+    //files whose data is forced along with the directories; the appliers of a commit add to it concurrently.
+    private final Set<File> filesToForce = new HashSet<File>();
     private boolean synchronizeDirectoryChanges;
+    private static volatile boolean filesForcedNatively = false;
+    private static volatile boolean filesCopiedNatively = false;
+    public static final int COPIED_BY_TRANSFER = 0;
+    public static final int COPIED_BY_REFLINK = 1;
+    public static final int COPIED_BY_COPY_FILE_RANGE = 2;
+    private final DirectorySyncCoordinator directorySyncCoordinator;
 
     public DurableDiskSession(boolean synchronizeDirectoryChanges) {
+        this(synchronizeDirectoryChanges, null);
+    }
+
+    DurableDiskSession(boolean synchronizeDirectoryChanges, DirectorySyncCoordinator directorySyncCoordinator) {
         this.synchronizeDirectoryChanges = synchronizeDirectoryChanges;
+        this.directorySyncCoordinator = directorySyncCoordinator;
     }
 
     private enum NATIVE_LIB_NAMES {
@@ -44,6 +57,8 @@ public class DurableDiskSession {
             }
         }
         if (success) {
+            filesForcedNatively = testFileForcingSetup();
+            filesCopiedNatively = testFileCopyingSetup();
             return forceDirectoryHierarchy(xaDiskHome);
         } else {
             return false;
@@ -59,6 +74,24 @@ public class DurableDiskSession {
         }
     }
 
+    //the native libraries built before the batched forcing was added do not have it.
+    private static boolean testFileForcingSetup() {
+        try {
+            return forceFilesAndDirectories(new String[0], new String[0]);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static boolean testFileCopyingSetup() {
+        try {
+            copyFileContents("", "");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
     private static boolean installAndLoadLibrary(String nativeLibraryName, File xaDiskHome)
             throws IOException {
         InputStream libInputStream = DurableDiskSession.class.getClassLoader().
@@ -89,6 +122,17 @@ public class DurableDiskSession {
 
     private static native boolean forceDirectories(String directoryPaths[]);
 
+    private static native boolean forceFilesAndDirectories(String filePaths[], String directoryPaths[]);
+
+    private static native int copyFileContents(String srcPath, String destPath);
+
+    static boolean forceFileAndDirectoryPaths(String filePaths[], String directoryPaths[]) {
+        if (filePaths.length == 0) {
+            return forceDirectories(directoryPaths);
+        }
+        return forceFilesAndDirectories(filePaths, directoryPaths);
+    }
+
     public static void testNativeLibrary() {
         try {
             for (NATIVE_LIB_NAMES nativeLibraryName : NATIVE_LIB_NAMES.values()) {
@@ -111,6 +155,20 @@ public class DurableDiskSession {
         }
     }
 
+    /**
+     * Tells whether the data of the files written during commit can be forced, through
+     * {@link #forceFileDataWithDirectories(File)}, along with the directories in one native call.
+     */
+    public boolean canForceFileDataWithDirectories() {
+        return synchronizeDirectoryChanges && filesForcedNatively;
+    }
+
+    public void forceFileDataWithDirectories(File f) {
+        synchronized (filesToForce) {
+            filesToForce.add(f);
+        }
+    }
+
     public void forceToDisk() throws IOException {
         if (!synchronizeDirectoryChanges) {
             return;
@@ -120,9 +178,22 @@ public class DurableDiskSession {
         for (File dir : directoriesToForce) {
             paths[i++] = dir.getAbsolutePath();
         }
-        if (!forceDirectories(paths)) {
+        String filePaths[];
+        synchronized (filesToForce) {
+            filePaths = new String[filesToForce.size()];
+            i = 0;
+            for (File f : filesToForce) {
+                filePaths[i++] = f.getAbsolutePath();
+            }
+        }
+        if (directorySyncCoordinator != null) {
+            directorySyncCoordinator.forceFilesAndDirectories(filePaths, paths);
+        } else if (!forceFileAndDirectoryPaths(filePaths, paths)) {
             throw new IOException("Fatal Error: Directory changes could not be forced-to-disk during transaction commit.");
         }
+        synchronized (filesToForce) {
+            filesToForce.clear();
+        }
     }
 
     private void forceToDisk(String directory) throws IOException {
@@ -131,6 +202,10 @@ public class DurableDiskSession {
         }
         String paths[] = new String[1];
         paths[0] = directory;
+        if (directorySyncCoordinator != null) {
+            directorySyncCoordinator.forceDirectories(paths);
+            return;
+        }
         if (!forceDirectories(paths)) {
             throw new IOException("Fatal Error: Directory changes could not be forced-to-disk during transaction commit.");
         }
@@ -142,12 +217,18 @@ public class DurableDiskSession {
         if (directoriesToForce.remove(src)) {
             directoriesToForce.add(dest);
         }
-        updatePathsForDescendantDirectories(src, dest);
+        updatePathsForDescendants(directoriesToForce, src, dest);
+        synchronized (filesToForce) {
+            if (filesToForce.remove(src)) {
+                filesToForce.add(dest);
+            }
+            updatePathsForDescendants(filesToForce, src, dest);
+        }
         FileIOUtility.renameTo(src, dest);
     }
 
-    private void updatePathsForDescendantDirectories(File ancestorOldPath, File ancestorNewPath) {
-        File dirs[] = directoriesToForce.toArray(new File[0]);
+    private static void updatePathsForDescendants(Set<File> pathsToForce, File ancestorOldPath, File ancestorNewPath) {
+        File dirs[] = pathsToForce.toArray(new File[0]);
         for (File dirName : dirs) {
             ArrayList<String> stepsToDescendToDir = MiscUtils.isDescedantOf(dirName, ancestorOldPath);
             if (stepsToDescendToDir != null) {
@@ -155,15 +236,26 @@ public class DurableDiskSession {
                 for (int j = stepsToDescendToDir.size() - 1; j >= 0; j--) {
                     newPathForDir.append(File.separator).append(stepsToDescendToDir.get(j));
                 }
-                directoriesToForce.remove(dirName);
-                directoriesToForce.add(new File(newPathForDir.toString()));
+                pathsToForce.remove(dirName);
+                pathsToForce.add(new File(newPathForDir.toString()));
             }
         }
     }
 
+    public void renameFileDurably(File src, File dest) throws IOException {
+        FileIOUtility.renameTo(src, dest);
+        forceToDisk(dest.getParentFile().getAbsolutePath());
+        if (!src.getParentFile().equals(dest.getParentFile())) {
+            forceToDisk(src.getParentFile().getAbsolutePath());
+        }
+    }
+
     public void deleteFile(File f) throws IOException {
         directoriesToForce.add(f.getParentFile());
         directoriesToForce.remove(f);
+        synchronized (filesToForce) {
+            filesToForce.remove(f);
+        }
         FileIOUtility.deleteFile(f);
     }
 
@@ -172,6 +264,31 @@ public class DurableDiskSession {
         forceToDisk(file.getParentFile().getAbsolutePath());
     }
 
+    /**
+     * Copies the contents of the source file into the destination file, which is created if it does not
+     * exist and is empty otherwise, and forces them. The native
+     * library is given a chance to copy them within the file system, by a reflink or copy_file_range; the
+     * contents are transferred through the channels otherwise.
+     * @return the way the contents were copied, one of COPIED_BY_TRANSFER, COPIED_BY_REFLINK and
+     * COPIED_BY_COPY_FILE_RANGE.
+     */
+    public int copyFileContents(File src, File dest) throws IOException {
+        if (!dest.exists()) {
+            createFile(dest);
+        }
+        if (filesCopiedNatively) {
+            int copyMethod = copyFileContents(src.getAbsolutePath(), dest.getAbsolutePath());
+            if (copyMethod < 0) {
+                throw new IOException("File " + src + " could not be copied to " + dest);
+            }
+            if (copyMethod != COPIED_BY_TRANSFER) {
+                return copyMethod;
+            }
+        }
+        FileIOUtility.copyFile(src, dest, true);
+        return COPIED_BY_TRANSFER;
+    }
+
     public void createFile(File f) throws IOException {
         directoriesToForce.add(f.getParentFile());
         FileIOUtility.createFile(f);
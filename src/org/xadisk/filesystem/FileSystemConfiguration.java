@@ -53,6 +53,23 @@ public class FileSystemConfiguration implements Serializable {
     private Boolean enableClusterMode = false;
     private String clusterMasterAddress;
     private Integer clusterMasterPort;
+    private Boolean enableGroupCommit = false;
+    private Integer groupCommitMaxWait = 1;
+    private Integer submittedBufferRingSize = 4096;
+    private Boolean preallocateTransactionLogs = false;
+    private Boolean enableMemoryMappedTransactionLogs = false;
+    private String additionalTransactionLogDirectories = "";
+    private Boolean enableAsynchronousCommit = false;
+    private Integer asynchronousCommitMaxDelay = 200;
+    private Integer transactionLogCompressionLevel = 0;
+    private Integer maxDelayForDiskWrite = 1000;
+    private Boolean enableAdaptiveDiskWriteThreshold = false;
+    private Integer transactionLogCompactionInterval = 0;
+    private Integer commitApplyParallelism = 1;
+    private Long shadowFileThresholdForRewrites = 0L;
+    private Boolean enableSharedLockReleaseOnPrepare = false;
+    private Integer lockTreePathCacheSize = 1000;
+    private Boolean enableIncrementalDeadLockDetection = false;
 
     /**
      * A constructor called by the JavaEE Container while deploying XADisk JCA Resource Adapter. The
@@ -662,6 +679,538 @@ public class FileSystemConfiguration implements Serializable {
         this.enableClusterMode = enableClusterMode;
     }
 
+    /**
+     * Returns the value of enableGroupCommit (a performance tuning property).
+     * <p> This flag can be used to specify whether the XADisk instance should merge the
+     * transaction log records which need to be forced to the disk (e.g. the records written
+     * at transaction commit or prepare) by concurrent transactions into a single disk write
+     * and a single disk force.
+     * <p> Each transaction still waits until its own log record is on the disk, so the
+     * durability guarantees are not affected.
+     * <p> Default value is false.
+     * @return value of enableGroupCommit.
+     * @since 1.3
+     */
+    public Boolean getEnableGroupCommit() {
+        return enableGroupCommit;
+    }
+
+    /**
+     * Sets the value of enableGroupCommit (a performance tuning property).
+     * <p> This flag can be used to specify whether the XADisk instance should merge the
+     * transaction log records which need to be forced to the disk (e.g. the records written
+     * at transaction commit or prepare) by concurrent transactions into a single disk write
+     * and a single disk force.
+     * <p> Each transaction still waits until its own log record is on the disk, so the
+     * durability guarantees are not affected.
+     * <p> Default value is false.
+     * @param enableGroupCommit new value of enableGroupCommit.
+     * @since 1.3
+     */
+    public void setEnableGroupCommit(Boolean enableGroupCommit) {
+        this.enableGroupCommit = enableGroupCommit;
+    }
+
+    /**
+     * Returns the value of groupCommitMaxWait (a performance tuning property).
+     * <p> This is the maximum number of milliseconds for which a group of log records, about to be
+     * forced to the disk, is held back so that log records from other concurrently committing
+     * transactions can join the same disk force. The wait happens only when other
+     * transactions are already waiting for a disk force.
+     * <p> This property is used only when {@link #getEnableGroupCommit() enableGroupCommit} is true.
+     * A value of 0 disables the waiting.
+     * <p> Default value is 1 millisecond.
+     * @return value of groupCommitMaxWait, in milliseconds.
+     * @since 1.3
+     */
+    public Integer getGroupCommitMaxWait() {
+        return groupCommitMaxWait;
+    }
+
+    /**
+     * Sets the value of groupCommitMaxWait (a performance tuning property).
+     * <p> This is the maximum number of milliseconds for which a group of log records, about to be
+     * forced to the disk, is held back so that log records from other concurrently committing
+     * transactions can join the same disk force. The wait happens only when other
+     * transactions are already waiting for a disk force.
+     * <p> This property is used only when {@link #getEnableGroupCommit() enableGroupCommit} is true.
+     * A value of 0 disables the waiting.
+     * <p> Default value is 1 millisecond.
+     * @param groupCommitMaxWait new value of groupCommitMaxWait, in milliseconds.
+     * @since 1.3
+     */
+    public void setGroupCommitMaxWait(Integer groupCommitMaxWait) {
+        this.groupCommitMaxWait = groupCommitMaxWait;
+    }
+
+    /**
+     * Returns the value of submittedBufferRingSize (a performance tuning property).
+     * <p> This is the number of transaction log buffers, submitted by the transactions for writing
+     * to the transaction log, which can be held before being written out. When these many buffers are
+     * pending, the next submission writes them out itself.
+     * <p> The value is rounded up to a power of two.
+     * <p> Default value is 4096.
+     * @return value of submittedBufferRingSize.
+     * @since 1.3
+     */
+    public Integer getSubmittedBufferRingSize() {
+        return submittedBufferRingSize;
+    }
+
+    /**
+     * Sets the value of submittedBufferRingSize (a performance tuning property).
+     * <p> This is the number of transaction log buffers, submitted by the transactions for writing
+     * to the transaction log, which can be held before being written out. When these many buffers are
+     * pending, the next submission writes them out itself.
+     * <p> The value is rounded up to a power of two.
+     * <p> Default value is 4096.
+     * @param submittedBufferRingSize new value of submittedBufferRingSize.
+     * @since 1.3
+     */
+    public void setSubmittedBufferRingSize(Integer submittedBufferRingSize) {
+        this.submittedBufferRingSize = submittedBufferRingSize;
+    }
+
+    /**
+     * Returns the value of preallocateTransactionLogs (a performance tuning property).
+     * <p> This flag can be used to specify whether the XADisk instance should allocate each of its
+     * transaction logs to its full {@link #getTransactionLogFileMaxSize() size} (filled with zeroes) before using it,
+     * and should keep the transaction logs which are no more required for reuse instead of deleting them.
+     * <p> With this flag set to true, writes to the transaction logs don't grow the transaction log files, and
+     * so forcing these writes to the disk doesn't have to update the file-system metadata. The allocation and
+     * zero-filling of spare transaction logs happens in the background.
+     * <p> Note that each spare transaction log kept for reuse occupies the full transaction log size on the disk.
+     * <p> Default value is false.
+     * @return value of preallocateTransactionLogs.
+     * @since 1.3
+     */
+    public Boolean getPreallocateTransactionLogs() {
+        return preallocateTransactionLogs;
+    }
+
+    /**
+     * Sets the value of preallocateTransactionLogs (a performance tuning property).
+     * <p> This flag can be used to specify whether the XADisk instance should allocate each of its
+     * transaction logs to its full {@link #getTransactionLogFileMaxSize() size} (filled with zeroes) before using it,
+     * and should keep the transaction logs which are no more required for reuse instead of deleting them.
+     * <p> With this flag set to true, writes to the transaction logs don't grow the transaction log files, and
+     * so forcing these writes to the disk doesn't have to update the file-system metadata. The allocation and
+     * zero-filling of spare transaction logs happens in the background.
+     * <p> Note that each spare transaction log kept for reuse occupies the full transaction log size on the disk.
+     * <p> Default value is false.
+     * @param preallocateTransactionLogs new value of preallocateTransactionLogs.
+     * @since 1.3
+     */
+    public void setPreallocateTransactionLogs(Boolean preallocateTransactionLogs) {
+        this.preallocateTransactionLogs = preallocateTransactionLogs;
+    }
+
+    /**
+     * Returns the value of enableMemoryMappedTransactionLogs (a performance tuning property).
+     * <p> This flag can be used to specify whether the XADisk instance should write its transaction logs
+     * through a memory-mapped window over the current transaction log (see {@link java.nio.MappedByteBuffer}),
+     * instead of writing them through a file channel.
+     * <p> Memory-mapped writing saves a system call and a copy of the log records for every batch of
+     * writes, which helps workloads with many small transactions. As the mapped window extends the
+     * transaction log file, this mode works best together with
+     * {@link #getPreallocateTransactionLogs() preallocateTransactionLogs}.
+     * <p> Default value is false.
+     * @return value of enableMemoryMappedTransactionLogs.
+     * @since 1.3
+     */
+    public Boolean getEnableMemoryMappedTransactionLogs() {
+        return enableMemoryMappedTransactionLogs;
+    }
+
+    /**
+     * Sets the value of enableMemoryMappedTransactionLogs (a performance tuning property).
+     * <p> This flag can be used to specify whether the XADisk instance should write its transaction logs
+     * through a memory-mapped window over the current transaction log (see {@link java.nio.MappedByteBuffer}),
+     * instead of writing them through a file channel.
+     * <p> Memory-mapped writing saves a system call and a copy of the log records for every batch of
+     * writes, which helps workloads with many small transactions. As the mapped window extends the
+     * transaction log file, this mode works best together with
+     * {@link #getPreallocateTransactionLogs() preallocateTransactionLogs}.
+     * <p> Default value is false.
+     * @param enableMemoryMappedTransactionLogs new value of enableMemoryMappedTransactionLogs.
+     * @since 1.3
+     */
+    public void setEnableMemoryMappedTransactionLogs(Boolean enableMemoryMappedTransactionLogs) {
+        this.enableMemoryMappedTransactionLogs = enableMemoryMappedTransactionLogs;
+    }
+
+    /**
+     * Returns the value of additionalTransactionLogDirectories (a performance tuning property).
+     * <p> This is a comma separated list of directories, each of which gets its own stripe of transaction logs
+     * in addition to the stripe kept inside {@link #getXaDiskHome() xaDiskHome}. Each stripe is written and
+     * forced to the disk independently of the others, and all log records of a transaction go to the same
+     * stripe; so, placing these directories on different disk devices lets concurrent transactions write
+     * their logs in parallel.
+     * <p> The set of directories should be changed only after a clean shutdown of the XADisk instance, i.e.
+     * when no transaction logs are left behind for recovery.
+     * <p> Default value is an empty string, i.e. a single stripe of transaction logs.
+     * @return value of additionalTransactionLogDirectories.
+     * @since 1.3
+     */
+    public String getAdditionalTransactionLogDirectories() {
+        return additionalTransactionLogDirectories;
+    }
+
+    /**
+     * Sets the value of additionalTransactionLogDirectories (a performance tuning property).
+     * <p> This is a comma separated list of directories, each of which gets its own stripe of transaction logs
+     * in addition to the stripe kept inside {@link #getXaDiskHome() xaDiskHome}. Each stripe is written and
+     * forced to the disk independently of the others, and all log records of a transaction go to the same
+     * stripe; so, placing these directories on different disk devices lets concurrent transactions write
+     * their logs in parallel.
+     * <p> The set of directories should be changed only after a clean shutdown of the XADisk instance, i.e.
+     * when no transaction logs are left behind for recovery.
+     * <p> Default value is an empty string, i.e. a single stripe of transaction logs.
+     * @param additionalTransactionLogDirectories new value of additionalTransactionLogDirectories.
+     * @since 1.3
+     */
+    public void setAdditionalTransactionLogDirectories(String additionalTransactionLogDirectories) {
+        this.additionalTransactionLogDirectories = additionalTransactionLogDirectories;
+    }
+
+    /**
+     * Returns the value of enableAsynchronousCommit (a performance tuning property).
+     * <p> This flag can be used to specify whether the one-phase commit of a transaction should return
+     * without waiting for the transaction's log records to be forced to the disk. The log is then forced
+     * in the background, at most {@link #getAsynchronousCommitMaxDelay() asynchronousCommitMaxDelay}
+     * milliseconds later, and the changes made by the transaction are applied to the files and directories
+     * only after that. Till then, the transaction keeps holding its locks, so other transactions never see
+     * changes which may get lost.
+     * <p> With this flag set to true, a system crash (but not an XADisk failure or shutdown) can lose the
+     * transactions committed during the last few moments before the crash. Each such transaction is lost
+     * completely, never partially.
+     * <p> Default value is false.
+     * @return value of enableAsynchronousCommit.
+     * @since 1.3
+     */
+    public Boolean getEnableAsynchronousCommit() {
+        return enableAsynchronousCommit;
+    }
+
+    /**
+     * Sets the value of enableAsynchronousCommit (a performance tuning property).
+     * <p> This flag can be used to specify whether the one-phase commit of a transaction should return
+     * without waiting for the transaction's log records to be forced to the disk. The log is then forced
+     * in the background, at most {@link #getAsynchronousCommitMaxDelay() asynchronousCommitMaxDelay}
+     * milliseconds later, and the changes made by the transaction are applied to the files and directories
+     * only after that. Till then, the transaction keeps holding its locks, so other transactions never see
+     * changes which may get lost.
+     * <p> With this flag set to true, a system crash (but not an XADisk failure or shutdown) can lose the
+     * transactions committed during the last few moments before the crash. Each such transaction is lost
+     * completely, never partially.
+     * <p> Default value is false.
+     * @param enableAsynchronousCommit new value of enableAsynchronousCommit.
+     * @since 1.3
+     */
+    public void setEnableAsynchronousCommit(Boolean enableAsynchronousCommit) {
+        this.enableAsynchronousCommit = enableAsynchronousCommit;
+    }
+
+    /**
+     * Returns the value of asynchronousCommitMaxDelay (a performance tuning property).
+     * <p> This is the maximum number of milliseconds after which the log records of a transaction, whose
+     * commit has returned, are forced to the disk. It bounds the window of committed transactions which a
+     * system crash can lose. The log is also forced earlier if many such transactions are waiting.
+     * <p> This property is used only when {@link #getEnableAsynchronousCommit() enableAsynchronousCommit}
+     * is true.
+     * <p> Default value is 200 milliseconds.
+     * @return value of asynchronousCommitMaxDelay, in milliseconds.
+     * @since 1.3
+     */
+    public Integer getAsynchronousCommitMaxDelay() {
+        return asynchronousCommitMaxDelay;
+    }
+
+    /**
+     * Sets the value of asynchronousCommitMaxDelay (a performance tuning property).
+     * <p> This is the maximum number of milliseconds after which the log records of a transaction, whose
+     * commit has returned, are forced to the disk. It bounds the window of committed transactions which a
+     * system crash can lose. The log is also forced earlier if many such transactions are waiting.
+     * <p> This property is used only when {@link #getEnableAsynchronousCommit() enableAsynchronousCommit}
+     * is true.
+     * <p> Default value is 200 milliseconds.
+     * @param asynchronousCommitMaxDelay new value of asynchronousCommitMaxDelay, in milliseconds.
+     * @since 1.3
+     */
+    public void setAsynchronousCommitMaxDelay(Integer asynchronousCommitMaxDelay) {
+        this.asynchronousCommitMaxDelay = asynchronousCommitMaxDelay;
+    }
+
+    /**
+     * Returns the value of transactionLogCompressionLevel (a performance tuning property).
+     * <p> When this value is between 1 and 9, the file content written by a transaction is compressed,
+     * using the Deflate algorithm at this level, before being written to the transaction log. This reduces
+     * the disk bandwidth spent on the transaction log for compressible content, at the cost of some processor
+     * time in the threads writing the content. Content which doesn't compress is written as it is.
+     * A value of 0 disables the compression.
+     * <p> Default value is 0.
+     * @return value of transactionLogCompressionLevel.
+     * @since 1.3
+     */
+    public Integer getTransactionLogCompressionLevel() {
+        return transactionLogCompressionLevel;
+    }
+
+    /**
+     * Sets the value of transactionLogCompressionLevel (a performance tuning property).
+     * <p> When this value is between 1 and 9, the file content written by a transaction is compressed,
+     * using the Deflate algorithm at this level, before being written to the transaction log. This reduces
+     * the disk bandwidth spent on the transaction log for compressible content, at the cost of some processor
+     * time in the threads writing the content. Content which doesn't compress is written as it is.
+     * A value of 0 disables the compression.
+     * <p> Default value is 0.
+     * @param transactionLogCompressionLevel new value of transactionLogCompressionLevel.
+     * @since 1.3
+     */
+    public void setTransactionLogCompressionLevel(Integer transactionLogCompressionLevel) {
+        this.transactionLogCompressionLevel = transactionLogCompressionLevel;
+    }
+
+    /**
+     * Returns the value of maxDelayForDiskWrite (a performance tuning property).
+     * <p> This is the maximum number of milliseconds for which the buffers written by transactions are
+     * held in memory before being written to the transaction log, even when their cumulative size is still
+     * below {@link #getCumulativeBufferSizeForDiskWrite() cumulativeBufferSizeForDiskWrite}. It keeps the
+     * buffers of slow writers from occupying memory indefinitely. A value of 0 removes this bound.
+     * <p> Default value is 1000 milliseconds.
+     * @return value of maxDelayForDiskWrite, in milliseconds.
+     * @since 1.3
+     */
+    public Integer getMaxDelayForDiskWrite() {
+        return maxDelayForDiskWrite;
+    }
+
+    /**
+     * Sets the value of maxDelayForDiskWrite (a performance tuning property).
+     * <p> This is the maximum number of milliseconds for which the buffers written by transactions are
+     * held in memory before being written to the transaction log, even when their cumulative size is still
+     * below {@link #getCumulativeBufferSizeForDiskWrite() cumulativeBufferSizeForDiskWrite}. It keeps the
+     * buffers of slow writers from occupying memory indefinitely. A value of 0 removes this bound.
+     * <p> Default value is 1000 milliseconds.
+     * @param maxDelayForDiskWrite new value of maxDelayForDiskWrite, in milliseconds.
+     * @since 1.3
+     */
+    public void setMaxDelayForDiskWrite(Integer maxDelayForDiskWrite) {
+        this.maxDelayForDiskWrite = maxDelayForDiskWrite;
+    }
+
+    /**
+     * Returns the value of enableAdaptiveDiskWriteThreshold (a performance tuning property).
+     * <p> When true, the cumulative buffer size at which the buffers are written to the transaction log is
+     * adjusted at run time, starting from {@link #getCumulativeBufferSizeForDiskWrite() cumulativeBufferSizeForDiskWrite}
+     * and staying between 1/16 and 4 times that value. The size is lowered when the writes take long or the
+     * memory for buffers runs short, and raised when the writes are quick and the load keeps filling them.
+     * <p> Default value is false.
+     * @return value of enableAdaptiveDiskWriteThreshold.
+     * @since 1.3
+     */
+    public Boolean getEnableAdaptiveDiskWriteThreshold() {
+        return enableAdaptiveDiskWriteThreshold;
+    }
+
+    /**
+     * Sets the value of enableAdaptiveDiskWriteThreshold (a performance tuning property).
+     * <p> When true, the cumulative buffer size at which the buffers are written to the transaction log is
+     * adjusted at run time, starting from {@link #getCumulativeBufferSizeForDiskWrite() cumulativeBufferSizeForDiskWrite}
+     * and staying between 1/16 and 4 times that value. The size is lowered when the writes take long or the
+     * memory for buffers runs short, and raised when the writes are quick and the load keeps filling them.
+     * <p> Default value is false.
+     * @param enableAdaptiveDiskWriteThreshold new value of enableAdaptiveDiskWriteThreshold.
+     * @since 1.3
+     */
+    public void setEnableAdaptiveDiskWriteThreshold(Boolean enableAdaptiveDiskWriteThreshold) {
+        this.enableAdaptiveDiskWriteThreshold = enableAdaptiveDiskWriteThreshold;
+    }
+
+    /**
+     * Returns the value of transactionLogCompactionInterval (a performance tuning property).
+     * <p> This is the interval, in seconds, at which the log records of long running transactions are copied
+     * from the older transaction logs into the current one. A transaction which stays open keeps every
+     * transaction log it has written to from being reclaimed, however little of it the transaction uses; once
+     * its records have been copied, such older logs can be reclaimed. Only the transactions not in the middle of
+     * an operation, and not committing, are considered. A value of 0 disables this copying.
+     * <p> Default value is 0.
+     * @return value of transactionLogCompactionInterval, in seconds.
+     * @since 1.3
+     */
+    public Integer getTransactionLogCompactionInterval() {
+        return transactionLogCompactionInterval;
+    }
+
+    /**
+     * Sets the value of transactionLogCompactionInterval (a performance tuning property).
+     * <p> This is the interval, in seconds, at which the log records of long running transactions are copied
+     * from the older transaction logs into the current one. A transaction which stays open keeps every
+     * transaction log it has written to from being reclaimed, however little of it the transaction uses; once
+     * its records have been copied, such older logs can be reclaimed. Only the transactions not in the middle of
+     * an operation, and not committing, are considered. A value of 0 disables this copying.
+     * <p> Default value is 0.
+     * @param transactionLogCompactionInterval new value of transactionLogCompactionInterval, in seconds.
+     * @since 1.3
+     */
+    public void setTransactionLogCompactionInterval(Integer transactionLogCompactionInterval) {
+        this.transactionLogCompactionInterval = transactionLogCompactionInterval;
+    }
+
+    /**
+     * Returns the value of commitApplyParallelism (a performance tuning property).
+     * <p> This is the maximum number of threads which apply the changes of a committing transaction to the
+     * files. The appends and truncations of different files, coming one after the other in the transaction,
+     * are applied in parallel, while the changes to one file, and the other operations like creation, deletion,
+     * copy and move, are applied in their original order. A value of 1 applies all the changes in the
+     * committing thread.
+     * <p> Default value is 1.
+     * @return value of commitApplyParallelism.
+     * @since 1.3
+     */
+    public Integer getCommitApplyParallelism() {
+        return commitApplyParallelism;
+    }
+
+    /**
+     * Sets the value of commitApplyParallelism (a performance tuning property).
+     * <p> This is the maximum number of threads which apply the changes of a committing transaction to the
+     * files. The appends and truncations of different files, coming one after the other in the transaction,
+     * are applied in parallel, while the changes to one file, and the other operations like creation, deletion,
+     * copy and move, are applied in their original order. A value of 1 applies all the changes in the
+     * committing thread.
+     * <p> Default value is 1.
+     * @param commitApplyParallelism new value of commitApplyParallelism.
+     * @since 1.3
+     */
+    public void setCommitApplyParallelism(Integer commitApplyParallelism) {
+        this.commitApplyParallelism = commitApplyParallelism;
+    }
+
+    /**
+     * Returns the value of shadowFileThresholdForRewrites (a performance tuning property).
+     * <p> When an output stream, not opened for heavy writes, has written this many bytes to a file whose
+     * content is being written afresh in the transaction (a new file, or a file truncated to zero length),
+     * the stream switches to writing the content directly to a shadow file. The shadow file replaces the
+     * original file with a rename at commit, instead of the content being written to the transaction logs
+     * and then copied into the file. A value of 0 disables the switching.
+     * <p> With a value more than 0, a file truncated to zero length is also written to a shadow file by
+     * the output streams opened for heavy writes. As the shadow file takes the place of the original
+     * file at commit, the committed file is a new file: the permissions, owner and other attributes of
+     * the original file are not carried over, and other hard links to the original file keep its old
+     * content.
+     * <p> Default value is 0.
+     * @return value of shadowFileThresholdForRewrites.
+     * @since 1.3
+     */
+    public Long getShadowFileThresholdForRewrites() {
+        return shadowFileThresholdForRewrites;
+    }
+
+    /**
+     * Sets the value of shadowFileThresholdForRewrites (a performance tuning property).
+     * <p> When an output stream, not opened for heavy writes, has written this many bytes to a file whose
+     * content is being written afresh in the transaction (a new file, or a file truncated to zero length),
+     * the stream switches to writing the content directly to a shadow file. The shadow file replaces the
+     * original file with a rename at commit, instead of the content being written to the transaction logs
+     * and then copied into the file. A value of 0 disables the switching.
+     * <p> With a value more than 0, a file truncated to zero length is also written to a shadow file by
+     * the output streams opened for heavy writes. As the shadow file takes the place of the original
+     * file at commit, the committed file is a new file: the permissions, owner and other attributes of
+     * the original file are not carried over, and other hard links to the original file keep its old
+     * content.
+     * <p> Default value is 0.
+     * @param shadowFileThresholdForRewrites new value of shadowFileThresholdForRewrites.
+     * @since 1.3
+     */
+    public void setShadowFileThresholdForRewrites(Long shadowFileThresholdForRewrites) {
+        this.shadowFileThresholdForRewrites = shadowFileThresholdForRewrites;
+    }
+
+    /**
+     * Returns the value of enableSharedLockReleaseOnPrepare (a performance tuning property).
+     * <p> When set to true, a transaction being committed in two phases releases its shared (read) locks as
+     * soon as its prepare succeeds, instead of holding them till the commit or rollback. Writers waiting on
+     * these locks can then proceed while the transaction manager completes the other resources. The shared
+     * locks on the sources of file copies are kept, as those files are read again while committing.
+     * <p> Default value is false.
+     * @return value of enableSharedLockReleaseOnPrepare.
+     * @since 1.3
+     */
+    public Boolean getEnableSharedLockReleaseOnPrepare() {
+        return enableSharedLockReleaseOnPrepare;
+    }
+
+    /**
+     * Sets the value of enableSharedLockReleaseOnPrepare (a performance tuning property).
+     * <p> When set to true, a transaction being committed in two phases releases its shared (read) locks as
+     * soon as its prepare succeeds, instead of holding them till the commit or rollback. Writers waiting on
+     * these locks can then proceed while the transaction manager completes the other resources. The shared
+     * locks on the sources of file copies are kept, as those files are read again while committing.
+     * <p> Default value is false.
+     * @param enableSharedLockReleaseOnPrepare new value of enableSharedLockReleaseOnPrepare.
+     * @since 1.3
+     */
+    public void setEnableSharedLockReleaseOnPrepare(Boolean enableSharedLockReleaseOnPrepare) {
+        this.enableSharedLockReleaseOnPrepare = enableSharedLockReleaseOnPrepare;
+    }
+
+    /**
+     * Returns the value of lockTreePathCacheSize (a performance tuning property).
+     * <p> It specifies the maximum number of file and directory paths for which XADisk remembers the
+     * node in its tree of locks, so that a lock request on such a path need not walk the tree from its root.
+     * A value of 0 disables this cache.
+     * <p> Default value is 1000.
+     * @return value of lockTreePathCacheSize.
+     * @since 1.3
+     */
+    public Integer getLockTreePathCacheSize() {
+        return lockTreePathCacheSize;
+    }
+
+    /**
+     * Sets the value of lockTreePathCacheSize (a performance tuning property).
+     * <p> It specifies the maximum number of file and directory paths for which XADisk remembers the
+     * node in its tree of locks, so that a lock request on such a path need not walk the tree from its root.
+     * A value of 0 disables this cache.
+     * <p> Default value is 1000.
+     * @param lockTreePathCacheSize new value of lockTreePathCacheSize.
+     * @since 1.3
+     */
+    public void setLockTreePathCacheSize(Integer lockTreePathCacheSize) {
+        this.lockTreePathCacheSize = lockTreePathCacheSize;
+    }
+
+    /**
+     * Returns the value of enableIncrementalDeadLockDetection (a performance tuning property).
+     * <p> When set to true, a transaction about to wait for a lock first follows the waits starting at the
+     * holders of that lock; if they lead back to the transaction itself, the wait would complete a deadlock,
+     * and the transaction is chosen for rollback right away instead of being found by the periodic deadlock
+     * detection. The periodic detection remains for the deadlocks this check cannot see, such as those through
+     * transactions of remote XADisk instances.
+     * <p> Default value is false.
+     * @return value of enableIncrementalDeadLockDetection.
+     * @since 1.3
+     */
+    public Boolean getEnableIncrementalDeadLockDetection() {
+        return enableIncrementalDeadLockDetection;
+    }
+
+    /**
+     * Sets the value of enableIncrementalDeadLockDetection (a performance tuning property).
+     * <p> When set to true, a transaction about to wait for a lock first follows the waits starting at the
+     * holders of that lock; if they lead back to the transaction itself, the wait would complete a deadlock,
+     * and the transaction is chosen for rollback right away instead of being found by the periodic deadlock
+     * detection. The periodic detection remains for the deadlocks this check cannot see, such as those through
+     * transactions of remote XADisk instances.
+     * <p> Default value is false.
+     * @param enableIncrementalDeadLockDetection new value of enableIncrementalDeadLockDetection.
+     * @since 1.3
+     */
+    public void setEnableIncrementalDeadLockDetection(Boolean enableIncrementalDeadLockDetection) {
+        this.enableIncrementalDeadLockDetection = enableIncrementalDeadLockDetection;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof FileSystemConfiguration) {
@@ -7,20 +7,26 @@
 package org.xadisk.filesystem;
 
 import java.io.File;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class LockTreeNode {
 
+    //the references to the nodes collected by gc; their entries are removed from the parents' maps, which would
+    //otherwise keep an entry for every path ever locked.
+    private static final ReferenceQueue<LockTreeNode> collectedChildren = new ReferenceQueue<LockTreeNode>();
     private final File path;
     private NativeLock lock;
-    private final ConcurrentHashMap<String, WeakReference<LockTreeNode>> children =
-            new ConcurrentHashMap<String, WeakReference<LockTreeNode>>();
+    private final ConcurrentHashMap<String, ChildReference> children =
+            new ConcurrentHashMap<String, ChildReference>();
     private final AtomicReference<TransactionInformation> pinHolder = new AtomicReference<TransactionInformation>(null);
     private final LockTreeNode parentNode;//to keep a "strong" ref to all the ancestors to protect them from gc.
+    //the intention locks: the transactions holding a lock on this node or on a node below it, with the number of
+    //such locks. A directory can then be pinned by looking at its own node, instead of at all the nodes below it.
+    private final HashMap<TransactionInformation, Integer> intentionHolders = new HashMap<TransactionInformation, Integer>(4);
 
     LockTreeNode(File path, boolean withExclusiveLock, LockTreeNode parentNode) {
         this.path = path;
@@ -29,7 +35,8 @@ public class LockTreeNode {
     }
 
     LockTreeNode getChild(String name) {
-        WeakReference<LockTreeNode> nodeWR = children.get(name);
+        removeCollectedChildren();
+        ChildReference nodeWR = children.get(name);
         LockTreeNode node;
         if (nodeWR != null) {
             node = nodeWR.get();
@@ -38,8 +45,7 @@ public class LockTreeNode {
             }
         }
         node = new LockTreeNode(new File(path, name), false, this);
-        WeakReference<LockTreeNode> newNodeWR =
-                new WeakReference<LockTreeNode>(node);
+        ChildReference newNodeWR = new ChildReference(node, name, this);
         boolean success;
         if (nodeWR == null) {
             success = children.putIfAbsent(name, newNodeWR) == null;
@@ -54,37 +60,66 @@ public class LockTreeNode {
         }
     }
 
-    Collection<LockTreeNode> getAllChildren() {
-        Collection<WeakReference<LockTreeNode>> childrenRef =
-                children.values();
-        ArrayList<LockTreeNode> childrenList =
-                new ArrayList<LockTreeNode>(childrenRef.size());
-        for (WeakReference<LockTreeNode> childRef : childrenRef) {
-            LockTreeNode child = childRef.get();
-            if (child != null) {
-                childrenList.add(child);
-            }
+    private static void removeCollectedChildren() {
+        ChildReference collectedChild;
+        while ((collectedChild = (ChildReference) collectedChildren.poll()) != null) {
+            //the entry may already hold a newer node for the same name.
+            collectedChild.parentNode.children.remove(collectedChild.name, collectedChild);
         }
-        return childrenList;
     }
 
     boolean isPinnedByOtherTransaction(TransactionInformation thisTransaction) {
         return !(pinHolder.get() == null || pinHolder.get().equals(thisTransaction));
     }
 
-    boolean attemptPinning(TransactionInformation requestor) {
+    TransactionInformation getPinHolder() {
+        return pinHolder.get();
+    }
+
+    boolean isPinnedBy(TransactionInformation thisTransaction) {
         TransactionInformation holderTransaction = pinHolder.get();
-        if (holderTransaction == null) {
-            return pinHolder.compareAndSet(null, requestor);
-        } else {
+        return holderTransaction != null && holderTransaction.equals(thisTransaction);
+    }
+
+    synchronized boolean attemptPinning(TransactionInformation requestor) {
+        TransactionInformation holderTransaction = pinHolder.get();
+        if (holderTransaction != null) {
             return holderTransaction.equals(requestor);
         }
+        for (TransactionInformation intentionHolder : intentionHolders.keySet()) {
+            if (!intentionHolder.equals(requestor)) {
+                return false;
+            }
+        }
+        pinHolder.set(requestor);
+        return true;
     }
 
-    void releasePin() {
+    synchronized void releasePin() {
         pinHolder.set(null);
     }
 
+    synchronized boolean addIntention(TransactionInformation requestor) {
+        if (isPinnedByOtherTransaction(requestor)) {
+            return false;
+        }
+        Integer numIntentions = intentionHolders.get(requestor);
+        intentionHolders.put(requestor, numIntentions == null ? 1 : numIntentions + 1);
+        return true;
+    }
+
+    synchronized void removeIntention(TransactionInformation requestor) {
+        Integer numIntentions = intentionHolders.get(requestor);
+        if (numIntentions == null) {
+            return;
+        }
+        if (numIntentions == 1) {
+            intentionHolders.remove(requestor);
+        } else {
+            intentionHolders.put(requestor, numIntentions - 1);
+        }
+    }
+
     NativeLock getLock() {
         return lock;
     }
@@ -92,4 +127,20 @@ public class LockTreeNode {
     File getPath() {
         return path;
     }
+
+    LockTreeNode getParentNode() {
+        return parentNode;
+    }
+
+    private static class ChildReference extends WeakReference<LockTreeNode> {
+
+        private final String name;
+        private final LockTreeNode parentNode;
+
+        private ChildReference(LockTreeNode node, String name, LockTreeNode parentNode) {
+            super(node, collectedChildren);
+            this.name = name;
+            this.parentNode = parentNode;
+        }
+    }
 }
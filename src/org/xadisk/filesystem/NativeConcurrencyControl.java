@@ -8,10 +8,11 @@ package org.xadisk.filesystem;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.resource.spi.work.WorkException;
 import javax.resource.spi.work.WorkListener;
 import javax.resource.spi.work.WorkManager;
@@ -33,6 +34,11 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
     private final LockTreeNode rootNode;
     private final ConcurrentHashMap<File, LockTreeNode> pinnedDirectories =
             new ConcurrentHashMap<File, LockTreeNode>();
+    private final AtomicInteger numPinnedDirectories = new AtomicInteger(0);
+    private final ConcurrentHashMap<File, LockTreeNode> lockTreePathCache =
+            new ConcurrentHashMap<File, LockTreeNode>();
+    private final int lockTreePathCacheSize;
+    private final boolean incrementalDeadLockDetection;
 
     public NativeConcurrencyControl(FileSystemConfiguration configuration, WorkManager workManager,
             WorkListener workListener, NativeXAFileSystem nativeXAFileSystem) throws WorkException {
@@ -41,6 +47,8 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
                 nativeXAFileSystem, this);
         this.workManager = workManager;
         this.rootNode = new LockTreeNode(null, false, null);
+        this.lockTreePathCacheSize = configuration.getLockTreePathCacheSize();
+        this.incrementalDeadLockDetection = configuration.getEnableIncrementalDeadLockDetection();
         this.workManager.startWork(deadLockDetector, WorkManager.INDEFINITE, null, workListener);
     }
 
@@ -55,32 +63,41 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
     }
 
     private LockTreeNode traverseDownToFileNode(File f, boolean checkForPins, TransactionInformation requestor) throws AncestorPinnedException {
-        List<String> pathElements = new ArrayList<String>();
-        File currentFile = f;
-        while (currentFile != null) {
-            File parentFile = currentFile.getParentFile();
-            if (parentFile == null) {
-                pathElements.add(currentFile.getAbsolutePath());
-            } else {
-                pathElements.add(currentFile.getName());
+        LockTreeNode fileNode = getLockTreeNode(f);
+        //with no directory pinned, no node on the path can be.
+        if (checkForPins && numPinnedDirectories.get() > 0) {
+            for (LockTreeNode nodeOnPath = fileNode; nodeOnPath != rootNode; nodeOnPath = nodeOnPath.getParentNode()) {
+                if (nodeOnPath.isPinnedByOtherTransaction(requestor)) {
+                    throw new AncestorPinnedException(f.getAbsolutePath(), nodeOnPath.getPath().getAbsolutePath());
+                }
             }
-            currentFile = parentFile;
         }
+        return fileNode;
+    }
 
-        LockTreeNode currentNode = rootNode;
-        List<LockTreeNode> nodesOnPath = new ArrayList<LockTreeNode>();
-        for (int i = pathElements.size() - 1; i >= 0; i--) {
-            currentNode = currentNode.getChild(pathElements.get(i));
-            nodesOnPath.add(currentNode);
+    //a node in the cache stays referenced, and so remains the one its parent returns for its name.
+    private LockTreeNode getLockTreeNode(File f) {
+        LockTreeNode node = lockTreePathCache.get(f);
+        if (node != null) {
+            return node;
         }
-        if (checkForPins) {
-            for (LockTreeNode nodeOnPath : nodesOnPath) {
-                if (nodeOnPath.isPinnedByOtherTransaction(requestor)) {
-                    throw new AncestorPinnedException(f.getAbsolutePath(), nodeOnPath.getPath().getAbsolutePath());
+        File parentFile = f.getParentFile();
+        if (parentFile == null) {
+            node = rootNode.getChild(f.getAbsolutePath());
+        } else {
+            node = getLockTreeNode(parentFile).getChild(f.getName());
+        }
+        if (lockTreePathCacheSize > 0) {
+            if (lockTreePathCache.size() >= lockTreePathCacheSize) {
+                Iterator<File> cachedPaths = lockTreePathCache.keySet().iterator();
+                if (cachedPaths.hasNext()) {
+                    cachedPaths.next();
+                    cachedPaths.remove();
                 }
             }
+            lockTreePathCache.put(f, node);
         }
-        return currentNode;
+        return node;
     }
 
     private Lock acquireSharedLock(TransactionInformation requestor, File f, long time) throws
@@ -93,7 +110,12 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
             lock.startSynchBlock();
             long remainingTime = time;
             boolean indefiniteWait = (time == 0);
-            resourceDependencyGraph.addDependency(requestor, lock);
+            //an uncontended lock is granted right away; only a requestor which has to wait is registered in the
+            //resource dependency graph, for the deadlock detection.
+            boolean mustWait = lock.isExclusive();
+            if (mustWait) {
+                addDependencyToRDG(requestor, lock, f);
+            }
             while (lock.isExclusive()) {
                 try {
                     long now1 = System.currentTimeMillis();
@@ -120,7 +142,9 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
                     throw ie;
                 }
             }
-            removeDependencyFromRDG(requestor);
+            if (mustWait) {
+                removeDependencyFromRDG(requestor);
+            }
             resolveConcurrenyWithDirectoryPin(lock, fileNode, requestor);
             return lock;
         } finally {
@@ -130,9 +154,28 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
 
     private void resolveConcurrenyWithDirectoryPin(NativeLock lock, LockTreeNode fileNode, TransactionInformation requestor) throws AncestorPinnedException {
         lock.addHolder(requestor);
-        if (fileNode.isPinnedByOtherTransaction(requestor)) {
+        LockTreeNode pinnedNode = addIntentionsOnPath(fileNode, requestor);
+        if (pinnedNode != null) {
             lock.removeHolder(requestor);
-            throw new AncestorPinnedException(fileNode.getPath().getAbsolutePath(), "<unknown>");
+            throw new AncestorPinnedException(fileNode.getPath().getAbsolutePath(), pinnedNode.getPath().getAbsolutePath());
+        }
+    }
+
+    //adds an intention of the requestor on the node and on each of its ancestors; if one of them is pinned by
+    //another transaction, the intentions added are taken back and that node is returned.
+    private LockTreeNode addIntentionsOnPath(LockTreeNode node, TransactionInformation requestor) {
+        for (LockTreeNode currentNode = node; currentNode != rootNode; currentNode = currentNode.getParentNode()) {
+            if (!currentNode.addIntention(requestor)) {
+                removeIntentionsOnPath(node, currentNode, requestor);
+                return currentNode;
+            }
+        }
+        return null;
+    }
+
+    private void removeIntentionsOnPath(LockTreeNode node, LockTreeNode tillNode, TransactionInformation requestor) {
+        for (LockTreeNode currentNode = node; currentNode != tillNode; currentNode = currentNode.getParentNode()) {
+            currentNode.removeIntention(requestor);
         }
     }
 
@@ -151,7 +194,10 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
             }
             long remainingTime = time;
             boolean indefiniteWait = (time == 0);
-            resourceDependencyGraph.addDependency(requestor, lock);
+            boolean mustWait = lock.getNumHolders() != 0;
+            if (mustWait) {
+                addDependencyToRDG(requestor, lock, f);
+            }
             while (!(lock.getNumHolders() == 0 || canUpgradeLock(lock, requestor))) {
                 try {
                     long now1 = System.currentTimeMillis();
@@ -178,7 +224,9 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
                     throw ie;
                 }
             }
-            removeDependencyFromRDG(requestor);
+            if (mustWait) {
+                removeDependencyFromRDG(requestor);
+            }
             //don't maky any changes in lock's state before "resolveCorrency" so that we don't need to clean them up.
             if (canUpgradeLock(lock, requestor)) {
                 lock.markUpgraded();
@@ -198,6 +246,7 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
             nativeLock.startSynchBlock();
             //TODO: write a good code to delete unnecessary entries from the fileLocks map.
             nativeLock.removeHolder(releasor);
+            removeIntentionsOnPath(nativeLock.getNode(), rootNode, releasor);
             if (nativeLock.isExclusive()) {
                 nativeLock.reset();
                 nativeLock.notifyReadWritable();
@@ -217,70 +266,100 @@ public class NativeConcurrencyControl implements ConcurrencyControl {
 
     public void releaseRenamePinOnDirectory(File dir) {
         LockTreeNode dirNode = pinnedDirectories.remove(dir);
-        unpinDirectoryTree(dirNode);
-    }
-
-    private void unpinDirectoryTree(LockTreeNode dirNode) {
-        dirNode.releasePin();
-        Collection<LockTreeNode> children = dirNode.getAllChildren();
-        for (LockTreeNode child : children) {
-            child.releasePin();
-            unpinDirectoryTree(child);
+        if (dirNode == null) {
+            return;
         }
+        TransactionInformation pinHolder = dirNode.getPinHolder();
+        dirNode.releasePin();
+        numPinnedDirectories.decrementAndGet();
+        removeIntentionsOnPath(dirNode.getParentNode(), rootNode, pinHolder);
     }
 
+    //the pin is an exclusive lock on the whole directory tree. Like a lock, it adds intentions on the ancestors,
+    //and it is granted only when no other transaction holds an intention on the directory itself; so neither the
+    //pinning nor a later lock below the directory needs to visit more than the nodes on its path.
     public void pinDirectoryForRename(File dir, TransactionInformation requestor)
             throws DirectoryPinningFailedException, AncestorPinnedException {
         LockTreeNode dirNode = traverseDownToFileNode(dir, true, requestor);
-        pinDirectoryTree(dirNode, requestor, dir.getAbsolutePath());
+        if (dirNode.isPinnedBy(requestor)) {
+            return;
+        }
+        LockTreeNode parentNode = dirNode.getParentNode();
+        LockTreeNode pinnedNode = addIntentionsOnPath(parentNode, requestor);
+        if (pinnedNode != null) {
+            throw new AncestorPinnedException(dir.getAbsolutePath(), pinnedNode.getPath().getAbsolutePath());
+        }
+        if (!dirNode.attemptPinning(requestor)) {
+            removeIntentionsOnPath(parentNode, rootNode, requestor);
+            throw new DirectoryPinningFailedException(dir.getAbsolutePath(), dir.getAbsolutePath());
+        }
+        numPinnedDirectories.incrementAndGet();
         pinnedDirectories.put(dir, dirNode);//to keep a "strong" ref to this dirNode.
     }
 
-    private void pinDirectoryTree(LockTreeNode dirNode, TransactionInformation requestor, String dirToRename)
-            throws DirectoryPinningFailedException {
-        pinLockTreeNode(dirNode, requestor, dirToRename);
-        Collection<LockTreeNode> children = dirNode.getAllChildren();
-        try {
-            for (LockTreeNode child : children) {
-                try {
-                    pinDirectoryTree(child, requestor, dirToRename);
-                } catch (DirectoryPinningFailedException dpfe) {
-                    child.releasePin();
-                    throw dpfe;
-                }
-            }
-        } catch (DirectoryPinningFailedException dpfe) {
-            dirNode.releasePin();
-            throw dpfe;
-        }
+    private boolean canUpgradeLock(NativeLock lock, TransactionInformation requestor) {
+        return lock.getNumHolders() == 1 && lock.isAHolder(requestor);
     }
 
-    private void pinLockTreeNode(LockTreeNode node, TransactionInformation requestor, String dirToRename) throws DirectoryPinningFailedException {
-        if (node.isPinnedByOtherTransaction(requestor)) {
-            throw new DirectoryPinningFailedException(dirToRename, node.getPath().getAbsolutePath());
-        }
-        if (!node.attemptPinning(requestor)) {
-            throw new DirectoryPinningFailedException(dirToRename, node.getPath().getAbsolutePath());
-        }
-        NativeLock lock = node.getLock();
-        TransactionInformation holders[];
-        try {
-            lock.startSynchBlock();
-            HashSet<TransactionInformation> holdersSet = lock.getHolders();
-            holders = holdersSet.toArray(new TransactionInformation[0]);
-        } finally {
-            lock.endSynchBlock();
-        }
-        for (int i = 0; i < holders.length; i++) {
-            if (!holders[i].equals(requestor)) {
-                node.releasePin();
-                throw new DirectoryPinningFailedException(dirToRename, node.getPath().getAbsolutePath());
-            }
+    private void addDependencyToRDG(TransactionInformation requestor, NativeLock lock, File f)
+            throws DeadLockVictimizedException {
+        resourceDependencyGraph.addDependency(requestor, lock);
+        if (incrementalDeadLockDetection && waitWouldDeadLock(requestor, lock)) {
+            removeDependencyFromRDG(requestor);
+            throw new DeadLockVictimizedException(f.getAbsolutePath());
         }
     }
 
-    private boolean canUpgradeLock(NativeLock lock, TransactionInformation requestor) {
-        return lock.getNumHolders() == 1 && lock.isAHolder(requestor);
+    //follows the waits starting at the holders of the lock; reaching a lock held by the requestor means that its
+    //wait would complete a cycle. The requestor is already in the graph, so of two transactions closing a cycle
+    //together, the later one finds it. A lock busy in another thread is not followed, and neither is a remote
+    //transaction; the periodic detection finds the cycles missed so.
+    private boolean waitWouldDeadLock(TransactionInformation requestor, NativeLock lock) {
+        HashSet<NativeLock> visitedLocks = new HashSet<NativeLock>();
+        Stack<NativeLock> locksToVisit = new Stack<NativeLock>();
+        visitedLocks.add(lock);
+        locksToVisit.push(lock);
+        while (!locksToVisit.empty()) {
+            NativeLock currentLock = locksToVisit.pop();
+            TransactionInformation holders[];
+            if (currentLock == lock) {
+                holders = lock.getHolders().toArray(new TransactionInformation[0]);
+            } else {
+                if (!currentLock.tryStartSynchBlock()) {
+                    continue;
+                }
+                try {
+                    holders = currentLock.getHolders().toArray(new TransactionInformation[0]);
+                } finally {
+                    currentLock.endSynchBlock();
+                }
+            }
+            for (TransactionInformation holder : holders) {
+                if (holder.equals(requestor)) {
+                    if (currentLock != lock) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (holder instanceof RemoteTransactionInformation) {
+                    continue;
+                }
+                ResourceDependencyGraph.Node holderNode = holder.getNodeInResourceDependencyGraph();
+                NativeLock lockWaitedFor = holderNode == null ? null : holderNode.getResourceWaitingFor();
+                if (lockWaitedFor == null) {
+                    continue;
+                }
+                if (lockWaitedFor == lock) {
+                    //both waiting to upgrade their shared locks.
+                    if (lock.isAHolder(requestor)) {
+                        return true;
+                    }
+                } else if (visitedLocks.add(lockWaitedFor)) {
+                    locksToVisit.push(lockWaitedFor);
+                }
+            }
+        }
+        return false;
     }
 
     private void removeDependencyFromRDG(TransactionInformation requestor) {
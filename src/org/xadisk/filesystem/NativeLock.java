@@ -73,6 +73,10 @@ public class NativeLock implements Lock {
         return resource;
     }
 
+    LockTreeNode getNode() {
+        return node;
+    }
+
     void markUpgraded() {
         this.upgraded = true;
     }
@@ -85,6 +89,10 @@ public class NativeLock implements Lock {
         synchLock.lock();
     }
 
+    boolean tryStartSynchBlock() {
+        return synchLock.tryLock();
+    }
+
     public void endSynchBlock() {
         synchLock.unlock();
     }
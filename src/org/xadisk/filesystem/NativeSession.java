@@ -18,10 +18,17 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkException;
 import org.xadisk.bridge.proxies.impl.RemoteConcurrencyControl;
 import org.xadisk.bridge.proxies.interfaces.XAFileInputStream;
 import org.xadisk.filesystem.exceptions.DeadLockVictimizedException;
@@ -38,12 +45,12 @@ import org.xadisk.filesystem.exceptions.TransactionTimeoutException;
 import org.xadisk.filesystem.exceptions.XASystemException;
 import org.xadisk.filesystem.exceptions.internal.XASystemIOException;
 import org.xadisk.filesystem.exceptions.XASystemNoMoreAvailableException;
-import org.xadisk.filesystem.utilities.FileIOUtility;
 import org.xadisk.filesystem.utilities.MiscUtils;
 
 public class NativeSession implements SessionCommonness {
 
     private final HashMap<File, Lock> allAcquiredLocks = new HashMap<File, Lock>(1000);
+    private final HashSet<File> filesReadDuringCommit = new HashSet<File>(5);
     private final ArrayList<NativeXAFileInputStream> allAcquiredInputStreams = new ArrayList<NativeXAFileInputStream>(5);
     private final ArrayList<NativeXAFileOutputStream> allAcquiredOutputStreams = new ArrayList<NativeXAFileOutputStream>(5);
     private final NativeXAFileSystem xaFileSystem;
@@ -53,6 +60,10 @@ public class NativeSession implements SessionCommonness {
     private boolean rolledbackPrematurely = false;
     private boolean sessionIsUseless = false;
     private volatile boolean startedCommitting = false;
+    private boolean committingInOnePhase = false;
+    private boolean prepared = false;
+    private boolean usingUndoLogs = false;
+    private boolean enqueuingEvents = false;
     private Throwable rollbackCause = null;
     private volatile boolean systemHasFailed = false;
     private volatile boolean systemGotShutdown = false;
@@ -67,6 +78,13 @@ public class NativeSession implements SessionCommonness {
     private final ReentrantLock asynchronousRollbackLock = new ReentrantLock(false);
     private final ArrayList<Long> transactionLogPositions = new ArrayList<Long>(25);
     private final ArrayList<Buffer> transactionInMemoryBuffers = new ArrayList<Buffer>(25);
+    //kept only when the transaction logs are compacted, for moving this transaction's records to a newer log.
+    //The log writer adds to them too, so they are always accessed with this lock held.
+    private final Object relocatableLogRecordsLock = new Object();
+    private final ArrayList<Buffer> transactionOnDiskBuffers = new ArrayList<Buffer>(0);
+    //each record is {log index, position, length}.
+    private final ArrayList<long[]> transactionLogRecords = new ArrayList<long[]>(0);
+    private DeferredFileUpdates deferredFileUpdates = null;
     private boolean publishFileStateChangeEventsOnCommit = false;
     private final HashMap<File, NativeXAFileOutputStream> fileAndOutputStream = new HashMap<File, NativeXAFileOutputStream>(1000);
     private boolean usingReadOnlyOptimization = true;
@@ -227,7 +245,7 @@ public class NativeSession implements SessionCommonness {
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, f.getAbsolutePath(),
                     operation));
             Buffer logEntry = new Buffer(logEntryBytes, xaFileSystem);
-            xaFileSystem.getTheGatheringDiskWriter().submitBuffer(logEntry, xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(logEntry, xid);
             addToFileSystemEvents(FileSystemStateChangeEvent.FileSystemEventType.CREATED, f, isDirectory);
             success = true;
             usingReadOnlyOptimization = false;
@@ -263,7 +281,7 @@ public class NativeSession implements SessionCommonness {
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, f.getAbsolutePath(),
                     TransactionLogEntry.FILE_DELETE));
             Buffer logEntry = new Buffer(logEntryBytes, xaFileSystem);
-            xaFileSystem.getTheGatheringDiskWriter().submitBuffer(logEntry, xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(logEntry, xid);
             addToFileSystemEvents(FileSystemStateChangeEvent.FileSystemEventType.DELETED, f, isDirectory);
             success = true;
             usingReadOnlyOptimization = false;
@@ -315,7 +333,7 @@ public class NativeSession implements SessionCommonness {
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, src.getAbsolutePath(),
                     dest.getAbsolutePath(), TransactionLogEntry.FILE_MOVE));
             Buffer logEntry = new Buffer(logEntryBytes, xaFileSystem);
-            xaFileSystem.getTheGatheringDiskWriter().submitBuffer(logEntry, xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(logEntry, xid);
 
             addToFileSystemEvents(new FileSystemStateChangeEvent.FileSystemEventType[]{FileSystemStateChangeEvent.FileSystemEventType.DELETED,
                         FileSystemStateChangeEvent.FileSystemEventType.CREATED, FileSystemStateChangeEvent.FileSystemEventType.MODIFIED},
@@ -364,7 +382,8 @@ public class NativeSession implements SessionCommonness {
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, src.getAbsolutePath(),
                     dest.getAbsolutePath(), TransactionLogEntry.FILE_COPY));
             Buffer logEntry = new Buffer(logEntryBytes, xaFileSystem);
-            xaFileSystem.getTheGatheringDiskWriter().submitBuffer(logEntry, xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(logEntry, xid);
+            filesReadDuringCommit.add(src);
 
             addToFileSystemEvents(new FileSystemStateChangeEvent.FileSystemEventType[]{FileSystemStateChangeEvent.FileSystemEventType.CREATED, FileSystemStateChangeEvent.FileSystemEventType.MODIFIED},
                     new File[]{dest, dest}, false);
@@ -557,7 +576,7 @@ public class NativeSession implements SessionCommonness {
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, f.getAbsolutePath(), newLength,
                     TransactionLogEntry.FILE_TRUNCATE));
             Buffer logEntry = new Buffer(logEntryBytes, xaFileSystem);
-            xaFileSystem.getTheGatheringDiskWriter().submitBuffer(logEntry, xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(logEntry, xid);
 
             addToFileSystemEvents(FileSystemStateChangeEvent.FileSystemEventType.MODIFIED, f, false);
 
@@ -577,7 +596,7 @@ public class NativeSession implements SessionCommonness {
         }
     }
 
-    private void submitPreCommitInformationForLogging() throws NoTransactionAssociatedException,
+    private void submitPreCommitInformationForLogging(boolean writeRemainingBuffers) throws NoTransactionAssociatedException,
             IOException {
         releaseAllStreams();
         Iterator<VirtualViewFile> vvfsUpdatedDirectly = view.getViewFilesWithLatestViewOnDisk().iterator();
@@ -586,23 +605,30 @@ public class NativeSession implements SessionCommonness {
         }
         HashSet<File> filesOnDisk = view.getFilesWithLatestViewOnDisk();
         ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, filesOnDisk));
-        xaFileSystem.getTheGatheringDiskWriter().submitBuffer(new Buffer(logEntryBytes, xaFileSystem), xid);
+        xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(new Buffer(logEntryBytes, xaFileSystem), xid);
 
         if (publishFileStateChangeEventsOnCommit) {
             fileStateChangeEventsToRaise = xaFileSystem.getFileSystemEventDelegator().retainOnlyInterestingEvents(fileStateChangeEventsToRaise);
+            enqueuingEvents = !fileStateChangeEventsToRaise.isEmpty();
             logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, fileStateChangeEventsToRaise,
                     TransactionLogEntry.EVENT_ENQUEUE));
-            xaFileSystem.getTheGatheringDiskWriter().submitBuffer(new Buffer(logEntryBytes, xaFileSystem), xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(new Buffer(logEntryBytes, xaFileSystem), xid);
+        }
+        if (writeRemainingBuffers) {
+            xaFileSystem.getTheGatheringDiskWriter(xid).writeRemainingBuffersNow(xid);
         }
-        xaFileSystem.getTheGatheringDiskWriter().writeRemainingBuffersNow(xid);
     }
 
     public void prepare() throws NoTransactionAssociatedException {
         try {
             asynchronousRollbackLock.lock();
             checkIfCanContinue();
-            submitPreCommitInformationForLogging();
-            xaFileSystem.getTheGatheringDiskWriter().transactionPrepareCompletes(xid);
+            submitPreCommitInformationForLogging(true);
+            xaFileSystem.getTheGatheringDiskWriter(xid).transactionPrepareCompletes(xid);
+            prepared = true;
+            if (xaFileSystem.isSharedLockReleaseOnPrepareEnabled()) {
+                releaseSharedLocks();
+            }
         } catch (NoTransactionAssociatedException note) {
             throw note;
         } catch (IOException ioe) {
@@ -613,10 +639,10 @@ public class NativeSession implements SessionCommonness {
     }
 
     public void commit(boolean onePhase) throws NoTransactionAssociatedException {
-        ArrayList<FileInputStream> logInputStreams = new ArrayList<FileInputStream>();
         try {
             asynchronousRollbackLock.lock();
             checkIfCanContinue();
+            committingInOnePhase = onePhase;
             if (onePhase) {
                 try {
                     if (usingReadOnlyOptimization) {
@@ -624,19 +650,46 @@ public class NativeSession implements SessionCommonness {
                         return;
                     }
                     if (!createdForRecovery) {
-                        submitPreCommitInformationForLogging();
-                        xaFileSystem.getTheGatheringDiskWriter().transactionCommitBegins(xid);
+                        //the remaining buffers are written along with the commit record.
+                        submitPreCommitInformationForLogging(false);
+                        if (xaFileSystem.isAsynchronousCommitEnabled()) {
+                            //the changes get applied, and the locks released, only after the flusher has
+                            //forced the log; so other transactions never see a commit which may get lost.
+                            startedCommitting = true;
+                            sessionIsUseless = true;
+                            operationsCanContinue = false;
+                            xaFileSystem.getTheGatheringDiskWriter(xid).transactionCommitBeginsAsynchronously(xid);
+                            return;
+                        }
+                        xaFileSystem.getTheGatheringDiskWriter(xid).transactionCommitBegins(xid);
                     }
                 } catch (IOException ioe) {
                     xaFileSystem.notifySystemFailure(ioe);
                 }
             }
+            applyCommittedChanges();
+        } finally {
+            asynchronousRollbackLock.unlock();
+        }
+    }
+
+    public void completeAsynchronousCommit() {
+        try {
+            asynchronousRollbackLock.lock();
+            applyCommittedChanges();
+        } finally {
+            asynchronousRollbackLock.unlock();
+        }
+    }
+
+    private void applyCommittedChanges() {
+        ArrayList<FileInputStream> logInputStreams = new ArrayList<FileInputStream>();
+        try {
             startedCommitting = true;
             ArrayList<Long> logPositions;
             HashSet<File> filesDirectlyWrittenToDisk;
             HashMap<Integer, FileChannel> logReaderChannels = new HashMap<Integer, FileChannel>(2);
-            FileChannel logReaderChannel = null;
-            String transactionLogBaseName = xaFileSystem.getTransactionLogFileBaseName();
+            TransactionLogReadAhead logReadAhead = null;
             int latestCheckPointForRecoveryCase = 0;
             HashSet<File> srcFilesMoved = new HashSet<File>();
             HashSet<File> srcFilesCopied = new HashSet<File>();
@@ -653,6 +706,7 @@ public class NativeSession implements SessionCommonness {
                 filesDirectlyWrittenToDisk = view.getFilesWithLatestViewOnDisk();
                 logPositions = this.transactionLogPositions;
             }
+            deferredFileUpdates = new DeferredFileUpdates(Math.max(1, xaFileSystem.getCommitApplyParallelism()));
             Buffer inMemoryLog;
             for (int i = latestCheckPointForRecoveryCase; i < logPositions.size() - 1; i += 2) {
                 ByteBuffer temp = null;
@@ -666,22 +720,27 @@ public class NativeSession implements SessionCommonness {
                     logEntry = TransactionLogEntry.parseLogEntry(temp);
                 } else {
                     if (logReaderChannels.get(logFileIndex) == null) {
-                        FileInputStream fis = new FileInputStream(transactionLogBaseName + "_" + logFileIndex);
+                        FileInputStream fis = new FileInputStream(xaFileSystem.getTransactionLogFile(logFileIndex));
                         logReaderChannels.put(logFileIndex, fis.getChannel());
                         logInputStreams.add(fis);
                     }
-                    logReaderChannel = logReaderChannels.get(logFileIndex);
-                    logReaderChannel.position(localPosition);
-                    logEntry = TransactionLogEntry.getNextTransactionLogEntry(logReaderChannel, localPosition, false);
+                    if (logReadAhead == null) {
+                        logReadAhead = new TransactionLogReadAhead();
+                    }
+                    logEntry = logReadAhead.readLogEntry(logReaderChannels.get(logFileIndex), logFileIndex, localPosition);
+                }
+                if (deferredFileUpdates.conflictsWith(logEntry)) {
+                    applyDeferredFileUpdates();
                 }
                 try {
-                    if (logEntry.getOperationType() == TransactionLogEntry.FILE_APPEND) {
+                    if (logEntry.getOperationType() == TransactionLogEntry.FILE_APPEND
+                            || logEntry.getOperationType() == TransactionLogEntry.COMPRESSED_FILE_APPEND) {
                         File f = new File(logEntry.getFileName());
                         if (filesDirectlyWrittenToDisk.contains(f)) {
                             continue;
                         }
                         checkPointDuringModificationAgainstCopy(i - 2, f, srcFilesCopied, srcFilesMoved);
-                        commitFileAppend(logEntry, temp, logReaderChannel, logFileIndex, localPosition);
+                        deferredFileUpdates.add(f, logEntry, temp, logFileIndex, localPosition);
                     } else if (logEntry.getOperationType() == TransactionLogEntry.FILE_DELETE) {
                         String fileName = logEntry.getFileName();
                         File f = new File(fileName);
@@ -732,7 +791,7 @@ public class NativeSession implements SessionCommonness {
                             continue;
                         }
                         checkPointDuringModificationAgainstCopy(i - 2, f, srcFilesCopied, srcFilesMoved);
-                        commitFileTruncate(logEntry);
+                        deferredFileUpdates.add(f, logEntry, null, logFileIndex, localPosition);
                     } else if (logEntry.getOperationType() == TransactionLogEntry.FILE_SPECIAL_MOVE) {
                         File src = new File(logEntry.getFileName());
                         File dest = new File(logEntry.getDestFileName());
@@ -750,8 +809,16 @@ public class NativeSession implements SessionCommonness {
                     throw new TransactionFailedException(ioe, xid);
                 }
             }
+            applyDeferredFileUpdates();
             diskSession.forceToDisk();
-            xaFileSystem.getTheGatheringDiskWriter().transactionCompletes(xid, true);
+            //a prepared transaction found incomplete is reported to the transaction manager again, which may have
+            //forgotten it and presume an abort; that is harmless unless the rollback would undo files written in
+            //place, or drop the events to be raised.
+            if (committingInOnePhase || (!createdForRecovery && !usingUndoLogs && !enqueuingEvents)) {
+                xaFileSystem.getTheGatheringDiskWriter(xid).transactionCompletesWithoutForce(xid, true);
+            } else {
+                xaFileSystem.getTheGatheringDiskWriter(xid).transactionCompletes(xid, true);
+            }
             for (FileInputStream logInputStream : logInputStreams) {
                 MiscUtils.closeAll(logInputStream);
                 //need to close logs here to allow cleanup of logs in crashRecoveryWorker.
@@ -762,10 +829,19 @@ public class NativeSession implements SessionCommonness {
         } catch (IOException ioe) {
             xaFileSystem.notifySystemFailure(ioe);
         } finally {
+            deferredFileUpdates = null;
             for (FileInputStream logInputStream : logInputStreams) {
                 MiscUtils.closeAll(logInputStream);
             }
-            asynchronousRollbackLock.unlock();
+        }
+    }
+
+    private void applyDeferredFileUpdates() {
+        try {
+            deferredFileUpdates.applyAll();
+        } catch (IOException ioe) {
+            xaFileSystem.notifyTransactionFailure(xid);
+            throw new TransactionFailedException(ioe, xid);
         }
     }
 
@@ -788,10 +864,12 @@ public class NativeSession implements SessionCommonness {
     }
 
     private void declareCheckPoint(int currentLogPosition, HashSet<File> srcFilesCopied, HashSet<File> srcFilesMoved) throws IOException {
+        //the checkpoint declares all the entries before it as applied.
+        applyDeferredFileUpdates();
         diskSession.forceToDisk();
         try {
             ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, currentLogPosition));
-            xaFileSystem.getTheGatheringDiskWriter().forceLog(xid, logEntryBytes);
+            xaFileSystem.getTheGatheringDiskWriter(xid).forceLog(xid, logEntryBytes);
         } catch (IOException ioe) {
             throw new XASystemIOException(ioe);
         }
@@ -827,10 +905,11 @@ public class NativeSession implements SessionCommonness {
         }
     }
 
-    private void commitFileAppend(TransactionLogEntry logEntry, ByteBuffer inMemoryLogEntry,
-            FileChannel logReaderChannel, int logFileIndex, long localPosition)
-            throws IOException {
-        String fileName = logEntry.getFileName();
+    //applies the collected appends and truncations of one file through one channel, forcing it once; or, if
+    //possible, leaves the forcing to the disk session which forces all the files in one native call.
+    private void commitFileUpdates(ArrayList<DeferredFileUpdate> updates, HashMap<Integer, FileChannel> logReaderChannels,
+            ArrayList<FileInputStream> logInputStreams) throws IOException {
+        String fileName = updates.get(0).logEntry.getFileName();
         if (!new File(fileName).exists()) {
             return;
         }
@@ -838,31 +917,66 @@ public class NativeSession implements SessionCommonness {
         FileOutputStream fos = null;
         try {
             fos = new FileOutputStream(fileName, true);
-            long contentLength = logEntry.getFileContentLength();
             FileChannel fc = fos.getChannel();
-            if (logFileIndex == -1) {
-                long num = 0;
-                inMemoryLogEntry.position(logEntry.getHeaderLength());
-                while (num < contentLength) {
-                    num += fc.write(inMemoryLogEntry, logEntry.getFilePosition());
+            for (DeferredFileUpdate update : updates) {
+                if (update.logEntry.getOperationType() == TransactionLogEntry.FILE_TRUNCATE) {
+                    fc.truncate(update.logEntry.getNewLength());
+                    continue;
                 }
-
-            } else {
-                logReaderChannel.position(localPosition + logEntry.getHeaderLength());
-                long num = 0;
-                if (logEntry.getFilePosition() <= fc.size()) {
-                    while (num < contentLength) {
-                        num += fc.transferFrom(logReaderChannel, num + logEntry.getFilePosition(),
-                                NativeXAFileSystem.maxTransferToChannel(contentLength - num));
+                FileChannel logReaderChannel = null;
+                if (update.logFileIndex != -1) {
+                    logReaderChannel = logReaderChannels.get(update.logFileIndex);
+                    if (logReaderChannel == null) {
+                        FileInputStream fis = new FileInputStream(xaFileSystem.getTransactionLogFile(update.logFileIndex));
+                        logInputStreams.add(fis);
+                        logReaderChannel = fis.getChannel();
+                        logReaderChannels.put(update.logFileIndex, logReaderChannel);
                     }
                 }
+                writeFileAppendContent(update.logEntry, update.inMemoryLogEntry, logReaderChannel,
+                        update.logFileIndex, update.localPosition, fc);
+            }
+            if (diskSession.canForceFileDataWithDirectories()) {
+                diskSession.forceFileDataWithDirectories(new File(fileName));
+            } else {
+                fc.force(false);
             }
-            fc.force(false);
         } finally {
             MiscUtils.closeAll(fos);
         }
     }
 
+    private void writeFileAppendContent(TransactionLogEntry logEntry, ByteBuffer inMemoryLogEntry,
+            FileChannel logReaderChannel, int logFileIndex, long localPosition, FileChannel fc)
+            throws IOException {
+        long contentLength = logEntry.getFileContentLength();
+        if (logFileIndex == -1) {
+            long num = 0;
+            inMemoryLogEntry.position(logEntry.getHeaderLength());
+            while (num < contentLength) {
+                num += fc.write(inMemoryLogEntry, logEntry.getFilePosition());
+            }
+
+        } else if (logEntry.getOperationType() == TransactionLogEntry.COMPRESSED_FILE_APPEND) {
+            ByteBuffer content = ByteBuffer.wrap(TransactionLogEntry.readCompressedFileAppendContent(
+                    logReaderChannel, localPosition));
+            if (logEntry.getFilePosition() <= fc.size()) {
+                while (content.hasRemaining()) {
+                    fc.write(content, logEntry.getFilePosition() + content.position());
+                }
+            }
+        } else {
+            logReaderChannel.position(localPosition + logEntry.getHeaderLength());
+            long num = 0;
+            if (logEntry.getFilePosition() <= fc.size()) {
+                while (num < contentLength) {
+                    num += fc.transferFrom(logReaderChannel, num + logEntry.getFilePosition(),
+                            NativeXAFileSystem.maxTransferToChannel(contentLength - num));
+                }
+            }
+        }
+    }
+
     private void commitDeleteFile(String fileName, HashSet<File> filesDirectlyWrittenToDisk)
             throws IOException {
         File f = new File(fileName);
@@ -912,7 +1026,7 @@ public class NativeSession implements SessionCommonness {
             diskSession.deleteFile(dest);
             diskSession.createFile(dest);
         }
-        FileIOUtility.copyFile(src, dest, true);
+        xaFileSystem.fileCopied(src, dest, diskSession.copyFileContents(src, dest));
         srcFilesCopied.add(src);
     }
 
@@ -935,23 +1049,6 @@ public class NativeSession implements SessionCommonness {
         diskSession.renameTo(src, dest);
     }
 
-    private void commitFileTruncate(TransactionLogEntry logEntry) throws IOException {
-        String fileName = logEntry.getFileName();
-        if (!new File(fileName).exists()) {
-            return;
-        }
-
-        FileOutputStream fos = null;
-        try {
-            fos = new FileOutputStream(fileName, true);
-            FileChannel fc = fos.getChannel();
-            fc.truncate(logEntry.getNewLength());
-            fc.force(false);
-        } finally {
-            MiscUtils.closeAll(fos);
-        }
-    }
-
     private void commitFileSpecialMove(TransactionLogEntry logEntry, HashSet<File> srcFilesMoved) throws IOException {
         File src = new File(logEntry.getFileName());
         File dest = new File(logEntry.getDestFileName());
@@ -987,7 +1084,6 @@ public class NativeSession implements SessionCommonness {
             ArrayList<Long> logPositions;
             HashMap<Integer, FileChannel> logReaderChannels = new HashMap<Integer, FileChannel>(2);
             FileChannel logReaderChannel = null;
-            String transactionLogBaseName = xaFileSystem.getTransactionLogFileBaseName();
             if (createdForRecovery) {
                 logPositions = xaFileSystem.getRecoveryWorker().getTransactionLogsPositions(xid);
             } else {
@@ -998,7 +1094,7 @@ public class NativeSession implements SessionCommonness {
                 logPositions = this.transactionLogPositions;
             }
 
-            xaFileSystem.getTheGatheringDiskWriter().transactionRollbackBegins(xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).transactionRollbackBegins(xid);
 
             Buffer inMemoryLog;
             for (int i = logPositions.size() - 2; i >= 0; i -= 2) {
@@ -1016,7 +1112,7 @@ public class NativeSession implements SessionCommonness {
                             TransactionLogEntry.parseLogEntry(temp);
                 } else {
                     if (!logReaderChannels.containsKey(logFileIndex)) {
-                        FileInputStream fis = new FileInputStream(transactionLogBaseName + "_" + logFileIndex);
+                        FileInputStream fis = new FileInputStream(xaFileSystem.getTransactionLogFile(logFileIndex));
                         logReaderChannels.put(logFileIndex, fis.getChannel());
                         logInputStreams.add(fis);
                     }
@@ -1062,7 +1158,11 @@ public class NativeSession implements SessionCommonness {
                     MiscUtils.closeAll(fos);
                 }
             }
-            xaFileSystem.getTheGatheringDiskWriter().transactionCompletes(xid, false);
+            //with no record of the rollback, the recovery rolls back again; so the record is needed only if the
+            //recovery would find the transaction at all, and even then need not be forced.
+            if (prepared || usingUndoLogs || createdForRecovery) {
+                xaFileSystem.getTheGatheringDiskWriter(xid).transactionCompletesWithoutForce(xid, false);
+            }
             for (FileInputStream logInputStream : logInputStreams) {
                 MiscUtils.closeAll(logInputStream);
                 //need to close logs here to allow cleanup of logs in crashRecoveryWorker.
@@ -1086,7 +1186,7 @@ public class NativeSession implements SessionCommonness {
         if (createdForRecovery) {
             xaFileSystem.getRecoveryWorker().cleanupTransactionInfo(xid);
         } else {
-            xaFileSystem.getTheGatheringDiskWriter().cleanupTransactionInfo(xid);
+            xaFileSystem.getTheGatheringDiskWriter(xid).cleanupTransactionInfo(xid);
         }
 
         releaseAllLocks();
@@ -1118,6 +1218,19 @@ public class NativeSession implements SessionCommonness {
         allAcquiredLocks.clear();
     }
 
+    //a prepared transaction reads nothing more, except the sources of its copies which are read again while
+    //committing; the other shared locks protect nothing now.
+    private void releaseSharedLocks() {
+        Iterator<Lock> locks = allAcquiredLocks.values().iterator();
+        while (locks.hasNext()) {
+            Lock lock = locks.next();
+            if (!lock.isExclusive() && !filesReadDuringCommit.contains(lock.getResource())) {
+                locks.remove();
+                concurrencyControl.releaseLock(xid, lock);
+            }
+        }
+    }
+
     private void releaseAllStreams() throws NoTransactionAssociatedException {
         for (XAFileInputStream xafis : allAcquiredInputStreams) {
             xafis.close();
@@ -1251,7 +1364,8 @@ public class NativeSession implements SessionCommonness {
     public void declareTransactionUsingUndoLogs() throws IOException {
         ByteBuffer logEntryBytes = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid,
                 TransactionLogEntry.TXN_USES_UNDO_LOGS));
-        xaFileSystem.getTheGatheringDiskWriter().forceLog(xid, logEntryBytes);
+        xaFileSystem.getTheGatheringDiskWriter(xid).forceLog(xid, logEntryBytes);
+        usingUndoLogs = true;
     }
 
     public long getTimeOfEntryToTransaction() {
@@ -1273,6 +1387,73 @@ public class NativeSession implements SessionCommonness {
         addLogPositionToTransaction(-1, indexIntoBufferArray);
     }
 
+    public void addOnDiskBufferToTransaction(Buffer buffer) {
+        if (!xaFileSystem.isTransactionLogCompactionEnabled()) {
+            return;
+        }
+        synchronized (relocatableLogRecordsLock) {
+            transactionOnDiskBuffers.add(buffer);
+        }
+    }
+
+    public void addLogRecordToTransaction(int logFileIndex, long position, long length) {
+        if (!xaFileSystem.isTransactionLogCompactionEnabled()) {
+            return;
+        }
+        synchronized (relocatableLogRecordsLock) {
+            transactionLogRecords.add(new long[]{logFileIndex, position, length});
+        }
+    }
+
+    //the records of this transaction in the given logs, in the order they were written.
+    public ArrayList<long[]> getLogRecordsInLogs(Collection<Integer> logIndices) {
+        ArrayList<long[]> records = new ArrayList<long[]>();
+        synchronized (relocatableLogRecordsLock) {
+            for (long record[] : transactionLogRecords) {
+                if (logIndices.contains((int) record[0])) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    //to be called with the asynchronousRollbackLock held.
+    public boolean canRelocateLogRecords() {
+        return !createdForRecovery && !startedCommitting && !sessionIsUseless && operationsCanContinue;
+    }
+
+    //to be called with the asynchronousRollbackLock held, after the log records of this transaction have been
+    //copied from the given logs to the given new log; the map is from the old positions to the new ones.
+    public void relocateLogPositions(HashMap<Integer, HashMap<Long, Long>> relocatedPositions, int newLogIndex) {
+        for (int i = 0; i < transactionLogPositions.size() - 1; i += 2) {
+            HashMap<Long, Long> positionsInLog = relocatedPositions.get(transactionLogPositions.get(i).intValue());
+            if (positionsInLog == null) {
+                continue;
+            }
+            transactionLogPositions.set(i, (long) newLogIndex);
+            transactionLogPositions.set(i + 1, positionsInLog.get(transactionLogPositions.get(i + 1)));
+        }
+        synchronized (relocatableLogRecordsLock) {
+            for (Buffer buffer : transactionOnDiskBuffers) {
+                OnDiskInfo onDiskInfo = buffer.getOnDiskInfo();
+                HashMap<Long, Long> positionsInLog = relocatedPositions.get(onDiskInfo.getLogIndex());
+                if (positionsInLog == null) {
+                    continue;
+                }
+                buffer.setOnDiskInfo(new OnDiskInfo(newLogIndex, positionsInLog.get(onDiskInfo.getLocation())));
+            }
+            for (long record[] : transactionLogRecords) {
+                HashMap<Long, Long> positionsInLog = relocatedPositions.get((int) record[0]);
+                if (positionsInLog == null) {
+                    continue;
+                }
+                record[0] = newLogIndex;
+                record[1] = positionsInLog.get(record[1]);
+            }
+        }
+    }
+
     boolean hasStartedCommitting() {
         return startedCommitting;
     }
@@ -1375,4 +1556,153 @@ public class NativeSession implements SessionCommonness {
     public boolean isUsingReadOnlyOptimization() {
         return usingReadOnlyOptimization;
     }
+
+    private static class DeferredFileUpdate {
+
+        private final TransactionLogEntry logEntry;
+        private final ByteBuffer inMemoryLogEntry;
+        private final int logFileIndex;
+        private final long localPosition;
+
+        private DeferredFileUpdate(TransactionLogEntry logEntry, ByteBuffer inMemoryLogEntry, int logFileIndex,
+                long localPosition) {
+            this.logEntry = logEntry;
+            this.inMemoryLogEntry = inMemoryLogEntry;
+            this.logFileIndex = logFileIndex;
+            this.localPosition = localPosition;
+        }
+    }
+
+    //appends and truncates of the files, collected in the order of the log until an entry depending upon
+    //one of those files, or a checkpoint, comes. The updates of one file are applied in that order, and the
+    //different files are updated in parallel.
+    private class DeferredFileUpdates {
+
+        private final int parallelism;
+        private final LinkedHashMap<File, ArrayList<DeferredFileUpdate>> updatesByFile =
+                new LinkedHashMap<File, ArrayList<DeferredFileUpdate>>();
+
+        private DeferredFileUpdates(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        private void add(File f, TransactionLogEntry logEntry, ByteBuffer inMemoryLogEntry, int logFileIndex,
+                long localPosition) {
+            ArrayList<DeferredFileUpdate> updates = updatesByFile.get(f);
+            if (updates == null) {
+                updates = new ArrayList<DeferredFileUpdate>();
+                updatesByFile.put(f, updates);
+            }
+            updates.add(new DeferredFileUpdate(logEntry, inMemoryLogEntry, logFileIndex, localPosition));
+        }
+
+        //the other operations are applied immediately, so they must not involve a file with collected updates.
+        private boolean conflictsWith(TransactionLogEntry logEntry) {
+            if (updatesByFile.isEmpty()) {
+                return false;
+            }
+            switch (logEntry.getOperationType()) {
+                case TransactionLogEntry.FILE_APPEND:
+                case TransactionLogEntry.COMPRESSED_FILE_APPEND:
+                case TransactionLogEntry.FILE_TRUNCATE:
+                case TransactionLogEntry.DIR_CREATE:
+                    return false;
+                case TransactionLogEntry.FILE_CREATE:
+                    return updatesByFile.containsKey(new File(logEntry.getFileName()));
+                case TransactionLogEntry.FILE_DELETE:
+                    File f = new File(logEntry.getFileName());
+                    return updatesByFile.containsKey(f) || f.isDirectory();
+                case TransactionLogEntry.FILE_COPY:
+                    return updatesByFile.containsKey(new File(logEntry.getFileName()))
+                            || updatesByFile.containsKey(new File(logEntry.getDestFileName()));
+                case TransactionLogEntry.FILE_MOVE:
+                case TransactionLogEntry.FILE_SPECIAL_MOVE:
+                    File src = new File(logEntry.getFileName());
+                    return src.isDirectory() || updatesByFile.containsKey(src)
+                            || updatesByFile.containsKey(new File(logEntry.getDestFileName()));
+                default:
+                    return true;
+            }
+        }
+
+        private void applyAll() throws IOException {
+            if (updatesByFile.isEmpty()) {
+                return;
+            }
+            ArrayList<ArrayList<DeferredFileUpdate>> fileUpdates =
+                    new ArrayList<ArrayList<DeferredFileUpdate>>(updatesByFile.values());
+            updatesByFile.clear();
+            int numAppliers = Math.min(parallelism, fileUpdates.size());
+            AtomicInteger nextFile = new AtomicInteger(0);
+            AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            CountDownLatch appliersDone = new CountDownLatch(numAppliers);
+            for (int i = 1; i < numAppliers; i++) {
+                try {
+                    xaFileSystem.startWork(new FileUpdatesApplier(fileUpdates, nextFile, failure, appliersDone));
+                } catch (WorkException we) {
+                    //the other appliers, including this thread, take up its share.
+                    appliersDone.countDown();
+                }
+            }
+            new FileUpdatesApplier(fileUpdates, nextFile, failure, appliersDone).run();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    appliersDone.await();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable t = failure.get();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t != null) {
+                throw (Error) t;
+            }
+        }
+    }
+
+    private class FileUpdatesApplier implements Work {
+
+        private final ArrayList<ArrayList<DeferredFileUpdate>> fileUpdates;
+        private final AtomicInteger nextFile;
+        private final AtomicReference<Throwable> failure;
+        private final CountDownLatch appliersDone;
+
+        private FileUpdatesApplier(ArrayList<ArrayList<DeferredFileUpdate>> fileUpdates, AtomicInteger nextFile,
+                AtomicReference<Throwable> failure, CountDownLatch appliersDone) {
+            this.fileUpdates = fileUpdates;
+            this.nextFile = nextFile;
+            this.failure = failure;
+            this.appliersDone = appliersDone;
+        }
+
+        public void release() {
+        }
+
+        public void run() {
+            //the log readers are not shared with the other appliers, as reading moves their positions.
+            HashMap<Integer, FileChannel> logReaderChannels = new HashMap<Integer, FileChannel>(2);
+            ArrayList<FileInputStream> logInputStreams = new ArrayList<FileInputStream>(2);
+            try {
+                int i;
+                while ((i = nextFile.getAndIncrement()) < fileUpdates.size() && failure.get() == null) {
+                    commitFileUpdates(fileUpdates.get(i), logReaderChannels, logInputStreams);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                for (FileInputStream logInputStream : logInputStreams) {
+                    MiscUtils.closeAll(logInputStream);
+                }
+                appliersDone.countDown();
+            }
+        }
+    }
 }
@@ -15,8 +15,12 @@ import org.xadisk.filesystem.standalone.StandaloneFileSystemConfiguration;
 import org.xadisk.filesystem.standalone.StandaloneWorkManager;
 import org.xadisk.filesystem.workers.CrashRecoveryWorker;
 import org.xadisk.filesystem.workers.FileSystemEventDelegator;
+import org.xadisk.filesystem.workers.AsynchronousCommitFlusher;
+import org.xadisk.filesystem.workers.BufferedLogFlushTrigger;
 import org.xadisk.filesystem.workers.GatheringDiskWriter;
 import org.xadisk.filesystem.workers.ObjectPoolReliever;
+import org.xadisk.filesystem.workers.TransactionLogPreallocator;
+import org.xadisk.filesystem.workers.TransactionLogCompactor;
 import org.xadisk.filesystem.workers.TransactionTimeoutDetector;
 import java.io.File;
 import java.io.IOException;
@@ -58,9 +62,8 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
     private final AtomicLong lastTransactionId = new AtomicLong(System.currentTimeMillis() / 1000);
     private final BufferPool bufferPool;
     private final SelectorPool selectorPool;
-    private final String transactionLogFileBaseName;
+    private final String transactionLogFileBaseNames[];
     private Logger logger;
-    private final String transactionLogsDir;
     private final DeadLetterMessageEndpoint deadLetter;
     private final FileSystemConfiguration configuration;
     private final ConcurrentHashMap<TransactionInformation, NativeSession> transactionAndSession =
@@ -68,7 +71,13 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
     private HashSet<TransactionInformation> transactionsPreparedPreCrash;
     private boolean returnedAllPreparedTransactions = false;
     private final WorkManager workManager;
-    private final GatheringDiskWriter gatheringDiskWriter;
+    private final GatheringDiskWriter gatheringDiskWriters[];
+    private final TransactionLogPreallocator transactionLogPreallocators[];
+    private final AsynchronousCommitFlusher asynchronousCommitFlusher;
+    private final DirectorySyncCoordinator directorySyncCoordinator = new DirectorySyncCoordinator();
+    private final AtomicLong fileCopiesByMethod[] = {new AtomicLong(0), new AtomicLong(0), new AtomicLong(0)};
+    private final BufferedLogFlushTrigger bufferedLogFlushTrigger;
+    private final TransactionLogCompactor transactionLogCompactor;
     private final CrashRecoveryWorker recoveryWorker;
     private final ObjectPoolReliever bufferPoolReliever;
     private final ObjectPoolReliever selectorPoolReliever;
@@ -128,16 +137,63 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
             if (!backupDirRoot.isDirectory()) {
                 diskSession.createDirectory(backupDirRoot);
             }
-            transactionLogsDir = xaDiskHomePath + File.separator + "txnlogs";
-            diskSession.createDirectoriesIfRequired(new File(transactionLogsDir));
-            transactionLogFileBaseName = transactionLogsDir + File.separator + "xadisk.log";
+            ArrayList<String> transactionLogsDirs = new ArrayList<String>();
+            transactionLogsDirs.add(xaDiskHomePath + File.separator + "txnlogs");
+            if (isValidString(configuration.getAdditionalTransactionLogDirectories())) {
+                String additionalDirs[] = configuration.getAdditionalTransactionLogDirectories().split(",");
+                for (int i = 0; i < additionalDirs.length; i++) {
+                    if (additionalDirs[i].trim().length() > 0) {
+                        transactionLogsDirs.add(new File(additionalDirs[i].trim()).getAbsolutePath());
+                    }
+                }
+            }
+            int numStripes = transactionLogsDirs.size();
+            transactionLogFileBaseNames = new String[numStripes];
+            for (int i = 0; i < numStripes; i++) {
+                diskSession.createDirectoriesIfRequired(new File(transactionLogsDirs.get(i)));
+                transactionLogFileBaseNames[i] = transactionLogsDirs.get(i) + File.separator + "xadisk.log";
+            }
             bufferPool = new BufferPool(configuration.getDirectBufferPoolSize(), configuration.getNonDirectBufferPoolSize(),
                     configuration.getBufferSize(), configuration.getDirectBufferIdleTime(),
                     configuration.getNonDirectBufferIdleTime(), this);
             selectorPool = new SelectorPool(1000);
-            gatheringDiskWriter = new GatheringDiskWriter(configuration.getCumulativeBufferSizeForDiskWrite(),
-                    configuration.getTransactionLogFileMaxSize(), configuration.getMaxNonPooledBufferSize(),
-                    transactionLogFileBaseName, this);
+            transactionLogPreallocators = new TransactionLogPreallocator[numStripes];
+            gatheringDiskWriters = new GatheringDiskWriter[numStripes];
+            for (int i = 0; i < numStripes; i++) {
+                if (configuration.getPreallocateTransactionLogs()) {
+                    transactionLogPreallocators[i] = new TransactionLogPreallocator(transactionLogFileBaseNames[i],
+                            configuration.getTransactionLogFileMaxSize(), this);
+                }
+                gatheringDiskWriters[i] = new GatheringDiskWriter(configuration.getCumulativeBufferSizeForDiskWrite(),
+                        configuration.getTransactionLogFileMaxSize(), configuration.getMaxNonPooledBufferSize(),
+                        configuration.getEnableGroupCommit(), configuration.getGroupCommitMaxWait(),
+                        configuration.getSubmittedBufferRingSize(),
+                        transactionLogPreallocators[i], configuration.getEnableMemoryMappedTransactionLogs(),
+                        configuration.getTransactionLogCompressionLevel(), transactionLogFileBaseNames[i], i, numStripes, this);
+            }
+            if (numStripes > 1) {
+                for (int i = 0; i < numStripes; i++) {
+                    gatheringDiskWriters[i].setStripeWriters(gatheringDiskWriters);
+                }
+            }
+            if (configuration.getEnableAsynchronousCommit()) {
+                asynchronousCommitFlusher = new AsynchronousCommitFlusher(configuration.getAsynchronousCommitMaxDelay(),
+                        gatheringDiskWriters, this);
+            } else {
+                asynchronousCommitFlusher = null;
+            }
+            if (configuration.getMaxDelayForDiskWrite() > 0 || configuration.getEnableAdaptiveDiskWriteThreshold()) {
+                bufferedLogFlushTrigger = new BufferedLogFlushTrigger(configuration.getMaxDelayForDiskWrite(),
+                        configuration.getEnableAdaptiveDiskWriteThreshold(), gatheringDiskWriters, this);
+            } else {
+                bufferedLogFlushTrigger = null;
+            }
+            if (configuration.getTransactionLogCompactionInterval() > 0) {
+                transactionLogCompactor = new TransactionLogCompactor(configuration.getTransactionLogCompactionInterval(),
+                        gatheringDiskWriters, this);
+            } else {
+                transactionLogCompactor = null;
+            }
             recoveryWorker = new CrashRecoveryWorker(this);
             bufferPoolReliever = new ObjectPoolReliever(bufferPool, configuration.getBufferPoolRelieverInterval(), this);
             selectorPoolReliever = new ObjectPoolReliever(selectorPool, 1000, this);
@@ -185,8 +241,23 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
             }
 
             recoveryWorker.collectRecoveryData();
-            gatheringDiskWriter.initialize();
-            workManager.startWork(gatheringDiskWriter, WorkManager.INDEFINITE, null, workListener);
+            for (int i = 0; i < numStripes; i++) {
+                if (transactionLogPreallocators[i] != null) {
+                    transactionLogPreallocators[i].initialize();
+                    workManager.startWork(transactionLogPreallocators[i], WorkManager.INDEFINITE, null, workListener);
+                }
+                gatheringDiskWriters[i].initialize();
+                workManager.startWork(gatheringDiskWriters[i], WorkManager.INDEFINITE, null, workListener);
+            }
+            if (asynchronousCommitFlusher != null) {
+                workManager.startWork(asynchronousCommitFlusher, WorkManager.INDEFINITE, null, workListener);
+            }
+            if (bufferedLogFlushTrigger != null) {
+                workManager.startWork(bufferedLogFlushTrigger, WorkManager.INDEFINITE, null, workListener);
+            }
+            if (transactionLogCompactor != null) {
+                workManager.startWork(transactionLogCompactor, WorkManager.INDEFINITE, null, workListener);
+            }
             workManager.startWork(recoveryWorker, WorkManager.INDEFINITE, null, workListener);
 
         } catch (Exception e) {
@@ -367,6 +438,8 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
         if (returnedAllPreparedTransactions) {
             return new Xid[0];
         }
+        //a prepared transaction with no completion record is reported here; the transaction manager
+        //decides its outcome, and one which it no longer knows about is presumed to have aborted.
         this.transactionsPreparedPreCrash = recoveryWorker.getPreparedInDoubtTransactions();
         Xid xids[];
         xids = transactionsPreparedPreCrash.toArray(new Xid[0]);
@@ -391,7 +464,7 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
     public void declareTransactionAsComplete(byte[] transactionIdentifier) {
         try {
             TransactionInformation xid = new TransactionInformation(ByteBuffer.wrap(transactionIdentifier));
-            gatheringDiskWriter.transactionCompletes(xid, true);
+            getTheGatheringDiskWriter(xid).transactionCompletes(xid, true);
             NativeSession session = transactionAndSession.get(xid);
             if (session != null) {
                 //the xadisk has not gone down after failure.
@@ -419,15 +492,44 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
     }
 
     public GatheringDiskWriter getTheGatheringDiskWriter() {
-        return gatheringDiskWriter;
+        //the first stripe; it also records the endpoint activations.
+        return gatheringDiskWriters[0];
+    }
+
+    public GatheringDiskWriter getTheGatheringDiskWriter(TransactionInformation xid) {
+        return gatheringDiskWriters[(xid.hashCode() & Integer.MAX_VALUE) % gatheringDiskWriters.length];
+    }
+
+    public boolean isAsynchronousCommitEnabled() {
+        return asynchronousCommitFlusher != null;
+    }
+
+    public int getCommitApplyParallelism() {
+        return configuration.getCommitApplyParallelism();
+    }
+
+    public long getShadowFileThresholdForRewrites() {
+        return configuration.getShadowFileThresholdForRewrites();
+    }
+
+    public boolean isTransactionLogCompactionEnabled() {
+        return configuration.getTransactionLogCompactionInterval() > 0;
+    }
+
+    public boolean isSharedLockReleaseOnPrepareEnabled() {
+        return configuration.getEnableSharedLockReleaseOnPrepare();
+    }
+
+    public String[] getTransactionLogFileBaseNames() {
+        return transactionLogFileBaseNames;
     }
 
-    public String getTransactionLogFileBaseName() {
-        return transactionLogFileBaseName;
+    public File getTransactionLogFile(int logIndex) {
+        return new File(transactionLogFileBaseNames[logIndex % transactionLogFileBaseNames.length] + "_" + logIndex);
     }
 
-    public String getTransactionLogsDir() {
-        return transactionLogsDir;
+    public void reclaimTransactionLog(int logIndex) throws IOException {
+        gatheringDiskWriters[logIndex % gatheringDiskWriters.length].reclaimTransactionLog(logIndex);
     }
 
     public CrashRecoveryWorker getRecoveryWorker() {
@@ -461,7 +563,7 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
         return lastTransactionId.getAndIncrement();
     }
 
-    Logger getLogger() {
+    public Logger getLogger() {
         return logger;
     }
 
@@ -475,12 +577,28 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
             allSessions[i].notifySystemShutdown();
         }
 
+        if (asynchronousCommitFlusher != null) {
+            asynchronousCommitFlusher.release();
+            //complete the commits which have already returned to their callers.
+            asynchronousCommitFlusher.completePendingCommits();
+        }
+        if (bufferedLogFlushTrigger != null) {
+            bufferedLogFlushTrigger.release();
+        }
+        if (transactionLogCompactor != null) {
+            transactionLogCompactor.release();
+        }
         bufferPoolReliever.release();
         selectorPoolReliever.release();
         concurrencyControl.shutdown();
         recoveryWorker.release();
-        gatheringDiskWriter.release();
-        gatheringDiskWriter.deInitialize();
+        for (int i = 0; i < gatheringDiskWriters.length; i++) {
+            gatheringDiskWriters[i].release();
+            gatheringDiskWriters[i].deInitialize();
+            if (transactionLogPreallocators[i] != null) {
+                transactionLogPreallocators[i].release();
+            }
+        }
         fileSystemEventDelegator.release();
         transactionTimeoutDetector.release();
         if (getHandleGeneralRemoteInvocations() || getHandleClusterRemoteInvocations()) {
@@ -522,13 +640,40 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
     }
 
     public final DurableDiskSession createDurableDiskSession() {
-        return new DurableDiskSession(configuration.getSynchronizeDirectoryChanges());
+        return new DurableDiskSession(configuration.getSynchronizeDirectoryChanges(), directorySyncCoordinator);
+    }
+
+    public long getIssuedDirectorySyncCount() {
+        return directorySyncCoordinator.getIssuedSyncCount();
+    }
+
+    public long getCoalescedDirectorySyncCount() {
+        return directorySyncCoordinator.getCoalescedSyncCount();
+    }
+
+    void fileCopied(File src, File dest, int copyMethod) {
+        fileCopiesByMethod[copyMethod].incrementAndGet();
+        if (copyMethod == DurableDiskSession.COPIED_BY_REFLINK) {
+            logger.logDebug("Copied " + src + " to " + dest + " by a reflink.");
+        } else if (copyMethod == DurableDiskSession.COPIED_BY_COPY_FILE_RANGE) {
+            logger.logDebug("Copied " + src + " to " + dest + " by copy_file_range.");
+        } else {
+            logger.logDebug("Copied " + src + " to " + dest + " by transferring the contents.");
+        }
+    }
+
+    /**
+     * Returns the number of file copies, done while committing, in the given way: one of
+     * DurableDiskSession.COPIED_BY_TRANSFER, COPIED_BY_REFLINK and COPIED_BY_COPY_FILE_RANGE.
+     */
+    public long getFileCopyCount(int copyMethod) {
+        return fileCopiesByMethod[copyMethod].get();
     }
 
     public void registerEndPointActivation(EndPointActivation activation) throws IOException {
         boolean notADuplicateActivation = fileSystemEventDelegator.registerActivation(activation);
         if (notADuplicateActivation && activation.getMessageEndpointFactory() instanceof RemoteMessageEndpointFactory) {
-            gatheringDiskWriter.recordEndPointActivation(activation);
+            getTheGatheringDiskWriter().recordEndPointActivation(activation);
             ((RemoteMessageEndpointFactory) activation.getMessageEndpointFactory()).setLocalXAFileSystem(this);
         }
     }
@@ -536,7 +681,7 @@ public class NativeXAFileSystem implements XAFileSystemCommonness {
     public void deRegisterEndPointActivation(EndPointActivation activation) throws IOException {
         fileSystemEventDelegator.deRegisterActivation(activation);
         if (activation.getMessageEndpointFactory() instanceof RemoteMessageEndpointFactory) {
-            gatheringDiskWriter.recordEndPointDeActivation(activation);
+            getTheGatheringDiskWriter().recordEndPointDeActivation(activation);
         }
     }
 
@@ -113,16 +113,21 @@ public class TransactionInformation implements Xid, Serializable {
     }
 
     public byte[] getBytes() {
-        ByteBuffer temp = ByteBuffer.allocate(1 + 1 + 4 + gid.length + bqual.length);
-        temp.put((byte) gid.length);
-        temp.put((byte) bqual.length);
-        temp.putInt(formatId);
-        temp.put(gid);
-        temp.put(bqual);
-        byte bytes[] = new byte[temp.capacity()];
-        temp.flip();
-        temp.get(bytes);
-        return bytes;
+        ByteBuffer temp = ByteBuffer.allocate(getBytesLength());
+        putBytes(temp);
+        return temp.array();
+    }
+
+    public int getBytesLength() {
+        return 1 + 1 + 4 + gid.length + bqual.length;
+    }
+
+    public void putBytes(ByteBuffer buffer) {
+        buffer.put((byte) gid.length);
+        buffer.put((byte) bqual.length);
+        buffer.putInt(formatId);
+        buffer.put(gid);
+        buffer.put(bqual);
     }
 
     public NativeSession getOwningSession() {
@@ -6,7 +6,9 @@
  */
 package org.xadisk.filesystem;
 
+import org.xadisk.filesystem.utilities.CRC32C;
 import org.xadisk.filesystem.utilities.FileIOUtility;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -16,6 +18,9 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import org.xadisk.bridge.proxies.facilitators.RemoteMethodInvoker;
 import org.xadisk.bridge.proxies.facilitators.RemoteXADiskActivationSpecImpl;
 import org.xadisk.bridge.proxies.impl.RemoteMessageEndpointFactory;
@@ -45,12 +50,19 @@ public class TransactionLogEntry {
     public static final byte CHECKPOINT_AVOIDING_COPY_OR_MOVE_REDO = 21;
     public static final byte REMOTE_ENDPOINT_ACTIVATES = 22;
     public static final byte REMOTE_ENDPOINT_DEACTIVATES = 23;
+    public static final byte COMPRESSED_FILE_APPEND = 24;
+    public static final byte LOG_RECORDS_RELOCATION_BEGINS = 25;
+    public static final byte LOG_RECORDS_RELOCATED = 26;
     public static final String UTF8Charset = "UTF8";
+    private static final int MINIMUM_HEADER_LENGTH = 13;
+    private static final int CHECKSUM_READ_CHUNK_SIZE = 64 * 1024;
+    private static final int OPERATION_TYPE_OFFSET = 8;
     private TransactionInformation xid;
     private byte operationType;
     private String fileName;
     private long filePosition;
     private int fileContentLength;
+    private int uncompressedContentLength;
     private int headerLength;
     private String destFileName;
     private long newLength;
@@ -80,24 +92,33 @@ public class TransactionLogEntry {
     public static byte[] getLogEntry(TransactionInformation xid, String file, long filePosition, int fileContentLength,
             byte appendOrUndoTruncate) {
         byte filePathBytes[] = getUTF8Bytes(file);
-        int filePathLength = filePathBytes.length;
-        ByteBuffer buffer = ByteBuffer.allocate(200 + filePathLength);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 1 + xid.getBytesLength() + 4 + filePathBytes.length + 8 + 4);
+        putLogEntry(buffer, xid, filePathBytes, filePosition, fileContentLength, appendOrUndoTruncate);
+        return buffer.array();
+    }
+
+    /**
+     * Writes the log entry header at the current position of the given buffer, and returns the header length.
+     * The buffer must have enough space remaining, and is left positioned right after the header.
+     */
+    public static int putLogEntry(ByteBuffer buffer, TransactionInformation xid, String file, long filePosition,
+            int fileContentLength, byte appendOrUndoTruncate) {
+        return putLogEntry(buffer, xid, getUTF8Bytes(file), filePosition, fileContentLength, appendOrUndoTruncate);
+    }
 
+    private static int putLogEntry(ByteBuffer buffer, TransactionInformation xid, byte filePathBytes[],
+            long filePosition, int fileContentLength, byte appendOrUndoTruncate) {
+        int start = buffer.position();
         buffer.putInt(0);
-        buffer.putInt((int) fileContentLength);
+        buffer.putInt(fileContentLength);
         buffer.put(appendOrUndoTruncate);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
 
-        buffer.putInt(filePathLength);
+        buffer.putInt(filePathBytes.length);
         buffer.put(filePathBytes);
 
         buffer.putLong(filePosition);
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return sealLogEntry(buffer, start);
     }
 
     static byte[] getLogEntry(TransactionInformation xid, String file, byte createFileOrDirOrDeleteOrUndoCreate) {
@@ -108,17 +129,12 @@ public class TransactionLogEntry {
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(createFileOrDirOrDeleteOrUndoCreate);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
 
         buffer.putInt(filePathLength);
         buffer.put(filePathBytes);
 
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return finishLogEntry(buffer);
     }
 
     public static byte[] getLogEntry(TransactionInformation xid, String file, long newLength, byte truncateOrUndoAppend) {
@@ -129,19 +145,14 @@ public class TransactionLogEntry {
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(truncateOrUndoAppend);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
 
         buffer.putInt(filePathLength);
         buffer.put(filePathBytes);
 
         buffer.putLong(newLength);
 
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return finishLogEntry(buffer);
     }
 
     public static byte[] getLogEntry(TransactionInformation xid, String sourceFile, String destinationFile, byte moveOrCopyOrUndoDelete) {
@@ -154,34 +165,38 @@ public class TransactionLogEntry {
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(moveOrCopyOrUndoDelete);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
         buffer.putInt(srcFilePathLength);
         buffer.put(sourceFilePathBytes);
 
         buffer.putInt(destFilePathLength);
         buffer.put(destFilePathBytes);
 
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return finishLogEntry(buffer);
     }
 
     public static byte[] getLogEntry(TransactionInformation xid, byte commitStatus) {
-        ByteBuffer buffer = ByteBuffer.allocate(200);
+        ByteBuffer buffer = ByteBuffer.allocate(getLogEntryLength(xid));
+        putLogEntry(buffer, xid, commitStatus);
+        return buffer.array();
+    }
+
+    public static int getLogEntryLength(TransactionInformation xid) {
+        return 4 + 4 + 1 + xid.getBytesLength() + 4;
+    }
+
+    /**
+     * Writes the log entry at the current position of the given buffer, and returns its length. The buffer
+     * must have {@link #getLogEntryLength(TransactionInformation)} bytes remaining.
+     */
+    public static int putLogEntry(ByteBuffer buffer, TransactionInformation xid, byte commitStatus) {
+        int start = buffer.position();
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(commitStatus);
-        buffer.put(xid.getBytes());
-
-        buffer.putInt(0, buffer.position());
+        xid.putBytes(buffer);
 
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return sealLogEntry(buffer, start);
     }
 
     static byte[] getLogEntry(TransactionInformation xid, int checkPointPosition) {
@@ -189,15 +204,10 @@ public class TransactionLogEntry {
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(CHECKPOINT_AVOIDING_COPY_OR_MOVE_REDO);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
         buffer.putInt(checkPointPosition);
 
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return finishLogEntry(buffer);
     }
 
     public static byte[] getLogEntry(TransactionInformation xid, Set<File> files) {
@@ -216,18 +226,13 @@ public class TransactionLogEntry {
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(FILES_ALREADY_ONDISK);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
         buffer.putInt(files.size());
         for (i = 0; i < filePathsBytes.length; i++) {
             buffer.putInt(filePathsBytes[i].length);
             buffer.put(filePathsBytes[i]);
         }
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return finishLogEntry(buffer);
     }
 
     public static byte[] getLogEntry(TransactionInformation xid, ArrayList<FileSystemStateChangeEvent> events, byte enQ_deQ_prepareDequeue) {
@@ -242,17 +247,12 @@ public class TransactionLogEntry {
         buffer.putInt(0);
         buffer.putInt(0);
         buffer.put(enQ_deQ_prepareDequeue);
-        buffer.put(xid.getBytes());
+        xid.putBytes(buffer);
         buffer.putInt(events.size());
         for (int i = 0; i < eventsBytes.length; i++) {
             buffer.put(eventsBytes[i]);
         }
-        buffer.putInt(0, buffer.position());
-
-        buffer.flip();
-        byte temp[] = new byte[buffer.limit()];
-        buffer.get(temp);
-        return temp;
+        return finishLogEntry(buffer);
     }
 
     public static byte[] getLogEntry(EndPointActivation remoteEPActivation, byte activation_deActivation) {
@@ -273,7 +273,7 @@ public class TransactionLogEntry {
             for (int i = 0; i < 3; i++) {
                 variableBytesLength += variableBytes[i].length;
             }
-            ByteBuffer buffer = ByteBuffer.allocate(41 + variableBytesLength);
+            ByteBuffer buffer = ByteBuffer.allocate(45 + variableBytesLength);
 
             buffer.putInt(0);
             buffer.putInt(0);
@@ -298,18 +298,160 @@ public class TransactionLogEntry {
 
             buffer.putLong(remoteMEPF.getRemoteObjectId());
 
-            buffer.putInt(0, buffer.position());
-
-            buffer.flip();
-            byte temp[] = new byte[buffer.limit()];
-            buffer.get(temp);
-            return temp;
+            return finishLogEntry(buffer);
         } catch (UnsupportedEncodingException uee) {
             //assert false;
             return null;
         }
     }
 
+    private static byte[] finishLogEntry(ByteBuffer buffer) {
+        sealLogEntry(buffer, 0);
+
+        buffer.flip();
+        byte temp[] = new byte[buffer.limit()];
+        buffer.get(temp);
+        return temp;
+    }
+
+    //completes the header which starts at the given position, and returns the header length.
+    private static int sealLogEntry(ByteBuffer buffer, int start) {
+        buffer.putInt(0);
+        int headerLength = buffer.position() - start;
+        buffer.putInt(start, headerLength);
+        //any content is covered later, when it has been placed after the header.
+        updateChecksum(buffer, start, 0);
+        return headerLength;
+    }
+
+    private static void updateChecksum(ByteBuffer entry, int contentLength) {
+        updateChecksum(entry, 0, contentLength);
+    }
+
+    private static void updateChecksum(ByteBuffer entry, int start, int contentLength) {
+        int headerLength = entry.getInt(start);
+        CRC32C checksum = new CRC32C();
+        checksum.update(entry, start, headerLength - 4);
+        if (contentLength > 0) {
+            checksum.update(entry, start + headerLength, contentLength);
+        }
+        entry.putInt(start + headerLength - 4, (int) checksum.getValue());
+    }
+
+    /**
+     * Recomputes the checksum of a log entry whose content has been placed in the same buffer, right after
+     * the header.
+     */
+    public static void updateContentLength(ByteBuffer buffer, int contentLength) {
+        buffer.putInt(4, contentLength);
+        updateChecksum(buffer, contentLength);
+    }
+
+    /**
+     * Recomputes the checksum of a log entry header whose content is going to be copied into the log from the
+     * given channel.
+     */
+    public static void updateChecksum(ByteBuffer header, FileChannel contents, long contentPosition,
+            long contentLength) throws IOException {
+        int headerLength = header.getInt(0);
+        CRC32C checksum = new CRC32C();
+        checksum.update(header, 0, headerLength - 4);
+        updateChecksumFromChannel(checksum, contents, contentPosition, contentLength);
+        header.putInt(headerLength - 4, (int) checksum.getValue());
+    }
+
+    private static void updateChecksumFromChannel(CRC32C checksum, FileChannel channel, long position,
+            long length) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(length, CHECKSUM_READ_CHUNK_SIZE));
+        long n = 0;
+        while (n < length) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), length - n));
+            int numRead = channel.read(chunk, position + n);
+            if (numRead == -1) {
+                throw new EOFException();
+            }
+            checksum.update(chunk, 0, numRead);
+            n += numRead;
+        }
+    }
+
+    //returns the FILE_APPEND log entry with its content compressed, or null if the content doesn't compress.
+    public static ByteBuffer getCompressedLogEntry(ByteBuffer fileAppendEntry, Deflater deflater) {
+        int headerLength = fileAppendEntry.getInt(0);
+        int contentLength = fileAppendEntry.getInt(4);
+        ByteBuffer source = fileAppendEntry.duplicate();
+        source.clear();
+        source.position(headerLength);
+        byte content[] = new byte[contentLength];
+        source.get(content);
+
+        deflater.reset();
+        deflater.setInput(content);
+        deflater.finish();
+        //the compressed entry carries 4 more bytes in its header.
+        byte compressedContent[] = new byte[contentLength - 4];
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < compressedContent.length) {
+            compressedLength += deflater.deflate(compressedContent, compressedLength,
+                    compressedContent.length - compressedLength);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + 4 + compressedLength);
+        source.clear();
+        source.limit(headerLength - 4);
+        buffer.put(source);
+        buffer.put(OPERATION_TYPE_OFFSET, COMPRESSED_FILE_APPEND);
+        buffer.putInt(contentLength);
+        buffer.putInt(0);
+        buffer.putInt(0, buffer.position());
+        buffer.putInt(4, compressedLength);
+        buffer.put(compressedContent, 0, compressedLength);
+        updateChecksum(buffer, compressedLength);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static boolean isCompressedFileAppend(FileChannel logChannel, long position) throws IOException {
+        ByteBuffer operationType = ByteBuffer.allocate(1);
+        logChannel.position(position + OPERATION_TYPE_OFFSET);
+        FileIOUtility.readFromChannel(logChannel, operationType, 0, 1);
+        return operationType.get(0) == COMPRESSED_FILE_APPEND;
+    }
+
+    //reads the uncompressed content of the COMPRESSED_FILE_APPEND log entry at the given position.
+    public static byte[] readCompressedFileAppendContent(FileChannel logChannel, long position) throws IOException {
+        TransactionLogEntry logEntry = parseLogEntry(readHeader(logChannel, position));
+        byte compressedContent[] = new byte[logEntry.fileContentLength];
+        logChannel.position(position + logEntry.headerLength);
+        FileIOUtility.readFromChannel(logChannel, ByteBuffer.wrap(compressedContent), 0, compressedContent.length);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedContent);
+            byte content[] = new byte[logEntry.uncompressedContentLength];
+            int n = 0;
+            while (n < content.length) {
+                int numInflated = inflater.inflate(content, n, content.length - n);
+                if (numInflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Compressed content of the log entry at position " + position
+                            + " is incomplete.");
+                }
+                n += numInflated;
+            }
+            return content;
+        } catch (DataFormatException dfe) {
+            IOException ioe = new IOException("Compressed content of the log entry at position " + position
+                    + " is corrupt.");
+            ioe.initCause(dfe);
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+    }
+
     static TransactionLogEntry parseLogEntry(ByteBuffer buffer) {
         TransactionLogEntry temp = new TransactionLogEntry();
         int position = buffer.position();
@@ -326,6 +468,11 @@ public class TransactionLogEntry {
             temp.fileName = readFileName(buffer);
             temp.filePosition = buffer.getLong();
             temp.fileContentLength = buffer.getInt(4);
+        } else if (temp.operationType == COMPRESSED_FILE_APPEND) {
+            temp.fileName = readFileName(buffer);
+            temp.filePosition = buffer.getLong();
+            temp.fileContentLength = buffer.getInt(4);
+            temp.uncompressedContentLength = buffer.getInt();
         } else if (temp.operationType == FILE_DELETE || temp.operationType == FILE_CREATE
                 || temp.operationType == DIR_CREATE) {
             temp.fileName = readFileName(buffer);
@@ -445,6 +592,10 @@ public class TransactionLogEntry {
         return xid;
     }
 
+    int getUncompressedContentLength() {
+        return uncompressedContentLength;
+    }
+
     int getHeaderLength() {
         return headerLength;
     }
@@ -461,18 +612,20 @@ public class TransactionLogEntry {
         return checkPointPosition;
     }
 
-    public static void updateContentLength(ByteBuffer buffer, int contentLength) {
-        buffer.putInt(4, contentLength);
-    }
-
-    public static TransactionLogEntry getNextTransactionLogEntry(FileChannel logChannel, long position,
-            boolean onlyCompletionEntry) throws IOException {
+    private static ByteBuffer readHeader(FileChannel logChannel, long position) throws IOException {
         ByteBuffer header = ByteBuffer.allocate(500);
         logChannel.position(position);
 
         FileIOUtility.readFromChannel(logChannel, header, 0, 4);
 
         int logEntryHeaderLength = header.getInt(0);
+        if (logEntryHeaderLength <= 0) {
+            //the unused (zero-filled) tail of a preallocated log.
+            throw new EOFException();
+        }
+        if (logEntryHeaderLength > logChannel.size() - position) {
+            throw new EOFException();
+        }
         if (logEntryHeaderLength > header.capacity()) {
             header = ByteBuffer.allocate(logEntryHeaderLength);
         }
@@ -480,6 +633,36 @@ public class TransactionLogEntry {
         header.clear();
         FileIOUtility.readFromChannel(logChannel, header, 0, logEntryHeaderLength);
         header.flip();
+        return header;
+    }
+
+    /**
+     * Reads the log entry at the given position only if its checksum matches; a torn or otherwise
+     * corrupted entry is reported as the end of the log.
+     */
+    public static TransactionLogEntry getNextVerifiedTransactionLogEntry(FileChannel logChannel, long position)
+            throws IOException {
+        ByteBuffer header = readHeader(logChannel, position);
+        int headerLength = header.getInt(0);
+        int contentLength = header.getInt(4);
+        if (headerLength < MINIMUM_HEADER_LENGTH || contentLength < 0
+                || position + headerLength + contentLength > logChannel.size()) {
+            throw new EOFException();
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(header, 0, headerLength - 4);
+        updateChecksumFromChannel(checksum, logChannel, position + headerLength, contentLength);
+        if ((int) checksum.getValue() != header.getInt(headerLength - 4)) {
+            throw new EOFException("Checksum mismatch for the log entry at position " + position + ".");
+        }
+        TransactionLogEntry logEntry = parseLogEntry(header);
+        logChannel.position(position + headerLength + contentLength);
+        return logEntry;
+    }
+
+    public static TransactionLogEntry getNextTransactionLogEntry(FileChannel logChannel, long position,
+            boolean onlyCompletionEntry) throws IOException {
+        ByteBuffer header = readHeader(logChannel, position);
 
         if (onlyCompletionEntry) {
             TransactionLogEntry logEntry = new TransactionLogEntry();
@@ -522,6 +705,6 @@ public class TransactionLogEntry {
     }
 
     public boolean isRedoLogEntry() {
-        return operationType < 12;
+        return operationType < 12 || operationType == COMPRESSED_FILE_APPEND;
     }
 }
@@ -0,0 +1,66 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+//reads the log entries of a transaction, which lie at increasing positions of a log, through one large
+//window over the log instead of a few small reads for each entry.
+class TransactionLogReadAhead {
+
+    private static final int WINDOW_SIZE = 256 * 1024;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private int windowLogIndex = -1;
+    private long windowPosition = 0;
+    private int windowLength = 0;
+
+    TransactionLogEntry readLogEntry(FileChannel logChannel, int logIndex, long position) throws IOException {
+        if (!isInWindow(logIndex, position, 4)) {
+            fill(logChannel, logIndex, position);
+            if (!isInWindow(logIndex, position, 4)) {
+                return TransactionLogEntry.getNextTransactionLogEntry(logChannel, position, false);
+            }
+        }
+        int headerLength = window.getInt((int) (position - windowPosition));
+        if (headerLength <= 0) {
+            return TransactionLogEntry.getNextTransactionLogEntry(logChannel, position, false);
+        }
+        if (!isInWindow(logIndex, position, headerLength)) {
+            fill(logChannel, logIndex, position);
+            if (!isInWindow(logIndex, position, headerLength)) {
+                return TransactionLogEntry.getNextTransactionLogEntry(logChannel, position, false);
+            }
+        }
+        int offset = (int) (position - windowPosition);
+        ByteBuffer header = window.duplicate();
+        header.limit(offset + headerLength);
+        header.position(offset);
+        return TransactionLogEntry.parseLogEntry(header.slice());
+    }
+
+    private boolean isInWindow(int logIndex, long position, int length) {
+        return logIndex == windowLogIndex && position >= windowPosition
+                && position + length <= windowPosition + windowLength;
+    }
+
+    private void fill(FileChannel logChannel, int logIndex, long position) throws IOException {
+        window.clear();
+        int numRead = 0;
+        while (window.hasRemaining()) {
+            int t = logChannel.read(window, position + numRead);
+            if (t == -1) {
+                break;
+            }
+            numRead += t;
+        }
+        windowLogIndex = logIndex;
+        windowPosition = position;
+        windowLength = numRead;
+    }
+}
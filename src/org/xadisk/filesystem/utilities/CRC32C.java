@@ -0,0 +1,89 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.utilities;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+public class CRC32C implements Checksum {
+
+    //Castagnoli polynomial, reversed.
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int TABLES[][] = new int[8][256];
+    private static final int DIRECT_BUFFER_CHUNK_SIZE = 4096;
+    private static final ThreadLocal<byte[]> directBufferChunks = new ThreadLocal<byte[]>() {
+
+        @Override
+        protected byte[] initialValue() {
+            return new byte[DIRECT_BUFFER_CHUNK_SIZE];
+        }
+    };
+    private int crc = 0xFFFFFFFF;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int value = i;
+            for (int bit = 0; bit < 8; bit++) {
+                value = (value & 1) != 0 ? (value >>> 1) ^ POLYNOMIAL : value >>> 1;
+            }
+            TABLES[0][i] = value;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                TABLES[t][i] = (TABLES[t - 1][i] >>> 8) ^ TABLES[0][TABLES[t - 1][i] & 0xFF];
+            }
+        }
+    }
+
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+    }
+
+    public void update(byte[] b, int off, int len) {
+        int localCrc = crc;
+        int end = off + len;
+        //slicing-by-8: consume 8 bytes per step.
+        while (end - off >= 8) {
+            int low = localCrc ^ ((b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8
+                    | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24);
+            localCrc = TABLES[7][low & 0xFF] ^ TABLES[6][(low >>> 8) & 0xFF]
+                    ^ TABLES[5][(low >>> 16) & 0xFF] ^ TABLES[4][low >>> 24]
+                    ^ TABLES[3][b[off + 4] & 0xFF] ^ TABLES[2][b[off + 5] & 0xFF]
+                    ^ TABLES[1][b[off + 6] & 0xFF] ^ TABLES[0][b[off + 7] & 0xFF];
+            off += 8;
+        }
+        while (off < end) {
+            localCrc = (localCrc >>> 8) ^ TABLES[0][(localCrc ^ b[off++]) & 0xFF];
+        }
+        crc = localCrc;
+    }
+
+    public void update(ByteBuffer buffer, int off, int len) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + off, len);
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        source.position(off);
+        byte chunk[] = directBufferChunks.get();
+        while (len > 0) {
+            int n = Math.min(len, chunk.length);
+            source.get(chunk, 0, n);
+            update(chunk, 0, n);
+            len -= n;
+        }
+    }
+
+    public long getValue() {
+        return (~crc) & 0xFFFFFFFFL;
+    }
+
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -6,11 +6,8 @@
  */
 package org.xadisk.filesystem.utilities;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Map;
-import org.xadisk.filesystem.DurableDiskSession;
 import org.xadisk.filesystem.TransactionInformation;
 
 public class TransactionLogsUtility {
@@ -26,12 +23,12 @@ public class TransactionLogsUtility {
         temp.add(localPosition);
     }
 
-    public static void deleteLogsIfPossible(TransactionInformation xid, Map<TransactionInformation, ArrayList<Integer>> transactionsAndLogsOccupied,
-            Map<Integer, Integer> transactionLogsAndOpenTransactions, int currentLogIndex,
-            String transactionLogBaseName, DurableDiskSession durableDiskSession) throws IOException {
+    public static ArrayList<Integer> releaseLogsOccupied(TransactionInformation xid, Map<TransactionInformation, ArrayList<Integer>> transactionsAndLogsOccupied,
+            Map<Integer, Integer> transactionLogsAndOpenTransactions, int currentLogIndex) {
+        ArrayList<Integer> logsNoMoreRequired = new ArrayList<Integer>(2);
         ArrayList<Integer> logsOccupied = transactionsAndLogsOccupied.get(xid);
         if (logsOccupied == null) {
-            return;
+            return logsNoMoreRequired;
         }
         for (Integer logFileIndex : logsOccupied) {
             Integer numTxns = transactionLogsAndOpenTransactions.get(logFileIndex);
@@ -40,21 +37,43 @@ public class TransactionLogsUtility {
             }
             numTxns--;
             if (numTxns == 0 && currentLogIndex != logFileIndex) {
-                durableDiskSession.deleteFileDurably(new File(transactionLogBaseName + "_" + logFileIndex));
+                logsNoMoreRequired.add(logFileIndex);
                 transactionLogsAndOpenTransactions.remove(logFileIndex);
             } else {
                 transactionLogsAndOpenTransactions.put(logFileIndex, numTxns);
             }
         }
+        return logsNoMoreRequired;
     }
 
-    public static void deleteLastLogIfPossible(int logFileIndex, Map<Integer, Integer> transactionLogsAndOpenTransactions,
-            String transactionLogBaseName, DurableDiskSession durableDiskSession) throws IOException {
+    //returns true if the log is not required by any transaction anymore.
+    public static boolean releaseLogOccupied(TransactionInformation xid, int logFileIndex,
+            Map<TransactionInformation, ArrayList<Integer>> transactionsAndLogsOccupied,
+            Map<Integer, Integer> transactionLogsAndOpenTransactions, int currentLogIndex) {
+        ArrayList<Integer> logsOccupied = transactionsAndLogsOccupied.get(xid);
+        if (logsOccupied == null || !logsOccupied.remove(Integer.valueOf(logFileIndex))) {
+            return false;
+        }
+        Integer numTxns = transactionLogsAndOpenTransactions.get(logFileIndex);
+        if (numTxns == null) {
+            return false;
+        }
+        numTxns--;
+        if (numTxns == 0 && currentLogIndex != logFileIndex) {
+            transactionLogsAndOpenTransactions.remove(logFileIndex);
+            return true;
+        }
+        transactionLogsAndOpenTransactions.put(logFileIndex, numTxns);
+        return false;
+    }
+
+    public static boolean releaseLastLogIfPossible(int logFileIndex, Map<Integer, Integer> transactionLogsAndOpenTransactions) {
         Integer numTxns = transactionLogsAndOpenTransactions.get(logFileIndex);
         if (numTxns != null && numTxns == 0) {
-            durableDiskSession.deleteFileDurably(new File(transactionLogBaseName + "_" + logFileIndex));
             transactionLogsAndOpenTransactions.remove(logFileIndex);
+            return true;
         }
+        return false;
     }
 
     public static void trackTransactionLogsUsage(TransactionInformation xid, Map<TransactionInformation, ArrayList<Integer>> transactionsAndLogsOccupied,
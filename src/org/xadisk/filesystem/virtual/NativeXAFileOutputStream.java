@@ -33,7 +33,7 @@ public class NativeXAFileOutputStream implements XAFileOutputStream {
     private long filePosition;
     private boolean closed = false;
     private final VirtualViewFile vvf;
-    private final boolean heavyWrite;
+    private boolean heavyWrite;
     private final NativeSession owningSession;
     private final ReentrantLock asynchronousRollbackLock;
 
@@ -42,7 +42,7 @@ public class NativeXAFileOutputStream implements XAFileOutputStream {
         this.xaFileSystem = xaFileSystem;
         this.destination = vvf.getFileName().getAbsolutePath();
         this.xid = xid;
-        this.theGatheringDiskWriter = this.xaFileSystem.getTheGatheringDiskWriter();
+        this.theGatheringDiskWriter = this.xaFileSystem.getTheGatheringDiskWriter(xid);
         this.vvf = vvf;
         this.filePosition = vvf.getLength();
         vvf.setBeingWritten(true);
@@ -81,6 +81,9 @@ public class NativeXAFileOutputStream implements XAFileOutputStream {
                 filePosition += lenToWriteNow;
                 if (byteBuffer.remaining() == 0) {
                     submitBuffer();
+                    if (shouldSwitchToHeavyWrite()) {
+                        switchToHeavyWrite();
+                    }
                     setUpNewBuffer();
                 }
                 off += lenToWriteNow;
@@ -133,10 +136,10 @@ public class NativeXAFileOutputStream implements XAFileOutputStream {
             this.byteBuffer.clear();
         } else {
             allocateByteBuffer();
-            byte temp[] = TransactionLogEntry.getLogEntry(xid, destination, filePosition, 21, TransactionLogEntry.FILE_APPEND);
-            byteBuffer.put(temp);
+            int headerLength = TransactionLogEntry.putLogEntry(byteBuffer, xid, destination, filePosition, 21,
+                    TransactionLogEntry.FILE_APPEND);
             buffer.setFileContentPosition(filePosition);
-            buffer.setHeaderLength(temp.length);
+            buffer.setHeaderLength(headerLength);
         }
     }
 
@@ -158,6 +161,26 @@ public class NativeXAFileOutputStream implements XAFileOutputStream {
         }
     }
 
+    private boolean shouldSwitchToHeavyWrite() {
+        if (heavyWrite) {
+            return false;
+        }
+        long threshold = xaFileSystem.getShadowFileThresholdForRewrites();
+        return threshold > 0 && filePosition >= threshold && vvf.isBeingRewritten() && !vvf.isBeingRead();
+    }
+
+    //the content written so far moves into the file in backup dir, and the rest goes there directly.
+    private void switchToHeavyWrite() {
+        try {
+            vvf.setUpForHeavyWriteOptimization();
+        } catch (IOException ioe) {
+            xaFileSystem.notifySystemFailure(ioe);
+        }
+        //the last buffer now belongs to the disk writer.
+        allocateByteBuffer();
+        heavyWrite = true;
+    }
+
     public File getDestinationFile() {
         return new File(destination);
     }
@@ -125,9 +125,17 @@ public class VirtualViewFile {
         return usingHeavyWriteOptimization;
     }
 
+    boolean isBeingRewritten() {
+        return !isMappedToAPhysicalFile() || mappedToThePhysicalFileTill == 0;
+    }
+
     private void safeSetupForPhysicalFileExistence() throws IOException {
         if (fileName.exists()) {
-            if (!isMappedToAPhysicalFile()) {
+            //with shadow files enabled, a file truncated to zero length is written afresh too; its original
+            //content stays in place till the commit renames the file in backup dir over it, so nothing needs
+            //to be undo-logged. The rename replaces the file itself, so this is left to that property.
+            if (!isMappedToAPhysicalFile() || (mappedToThePhysicalFileTill == 0
+                    && xaFileSystem.getShadowFileThresholdForRewrites() > 0)) {
                 physicalFileNameInBackupDir = getBackupFileName();
                 diskSession.createFile(physicalFileNameInBackupDir);
                 createdPhysicalFileInBackupDir = true;
@@ -171,13 +179,20 @@ public class VirtualViewFile {
                 int logIndex = onDiskInfo.getLogIndex();
                 FileChannel logFileChannel = logChannels.get(logIndex);
                 if (logFileChannel == null) {
-                    logFileChannel = new FileInputStream(xaFileSystem.getTransactionLogFileBaseName() + "_"
-                            + srcClone.getOnDiskInfo().getLogIndex()).getChannel();
+                    logFileChannel = new FileInputStream(xaFileSystem.getTransactionLogFile(logIndex)).getChannel();
                     logChannels.put(logIndex, logFileChannel);
                 }
-                logFileChannel.position(onDiskInfo.getLocation() + srcClone.getHeaderLength());
-                fileViewChannel.transferFrom(logFileChannel, srcClone.getFileContentPosition(),
-                        NativeXAFileSystem.maxTransferToChannel(srcClone.getFileContentLength()));
+                if (TransactionLogEntry.isCompressedFileAppend(logFileChannel, onDiskInfo.getLocation())) {
+                    ByteBuffer content = ByteBuffer.wrap(TransactionLogEntry.readCompressedFileAppendContent(
+                            logFileChannel, onDiskInfo.getLocation()));
+                    while (content.hasRemaining()) {
+                        fileViewChannel.write(content, srcClone.getFileContentPosition() + content.position());
+                    }
+                } else {
+                    logFileChannel.position(onDiskInfo.getLocation() + srcClone.getHeaderLength());
+                    fileViewChannel.transferFrom(logFileChannel, srcClone.getFileContentPosition(),
+                            NativeXAFileSystem.maxTransferToChannel(srcClone.getFileContentLength()));
+                }
             } else {
                 temp.position(srcClone.getHeaderLength());
                 int sizeToWrite = temp.remaining();
@@ -206,7 +221,7 @@ public class VirtualViewFile {
         }
         ByteBuffer logEntryHeader = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, fileName.getAbsolutePath(),
                 originalPhysicalFileSize, TransactionLogEntry.UNDOABLE_FILE_APPEND));
-        xaFileSystem.getTheGatheringDiskWriter().forceUndoLogAndData(xid, logEntryHeader, null, -1, -1);
+        xaFileSystem.getTheGatheringDiskWriter(xid).forceUndoLogAndData(xid, logEntryHeader, null, -1, -1);
     }
 
     private void safePhysicalTruncate(long newLength) throws IOException {
@@ -225,7 +240,7 @@ public class VirtualViewFile {
             ByteBuffer logEntryHeader = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, fileName.getAbsolutePath(),
                     newLength, lengthOfContentToBackUp,
                     TransactionLogEntry.UNDOABLE_FILE_TRUNCATE));
-            long logInfo[] = xaFileSystem.getTheGatheringDiskWriter().forceUndoLogAndData(xid, logEntryHeader, fileViewChannel,
+            long logInfo[] = xaFileSystem.getTheGatheringDiskWriter(xid).forceUndoLogAndData(xid, logEntryHeader, fileViewChannel,
                     newLength, lengthOfContentToBackUp);
             OnDiskInfo truncatedContentsFromLogs = new OnDiskInfo((int) logInfo[0], logInfo[1]);
             Buffer buffer = new Buffer(xaFileSystem);
@@ -233,6 +248,7 @@ public class VirtualViewFile {
             buffer.setFileContentLength(lengthOfContentToBackUp);
             buffer.setHeaderLength(logInfo.length);
             buffer.makeOnDisk(truncatedContentsFromLogs);
+            xid.getOwningSession().addOnDiskBufferToTransaction(buffer);
             for (VirtualViewFile fileCopy : fileCopies) {
                 fileCopy.updatePhysicalContents(buffer, newLength);
             }
@@ -369,7 +385,7 @@ public class VirtualViewFile {
         ByteBuffer logEntryHeader = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, sourceFile.getAbsolutePath(),
                 destFile.getAbsolutePath(),
                 TransactionLogEntry.FILE_SPECIAL_MOVE));
-        xaFileSystem.getTheGatheringDiskWriter().submitBuffer(new Buffer(logEntryHeader, xaFileSystem), xid);
+        xaFileSystem.getTheGatheringDiskWriter(xid).submitBuffer(new Buffer(logEntryHeader, xaFileSystem), xid);
     }
 
     public void forceAndFreePhysicalChannel() {
@@ -0,0 +1,149 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkException;
+import org.xadisk.filesystem.NativeSession;
+import org.xadisk.filesystem.NativeXAFileSystem;
+import org.xadisk.filesystem.TransactionInformation;
+import org.xadisk.filesystem.exceptions.TransactionFailedException;
+import org.xadisk.filesystem.utilities.Logger;
+
+public class AsynchronousCommitFlusher extends TimedWorker {
+
+    private final NativeXAFileSystem xaFileSystem;
+    private final GatheringDiskWriter gatheringDiskWriters[];
+    private final ReentrantLock commitsBeingAppliedLock = new ReentrantLock(false);
+    private final Condition allCommitsApplied = commitsBeingAppliedLock.newCondition();
+    private int commitsBeingApplied = 0;
+
+    public AsynchronousCommitFlusher(int maxDelay, GatheringDiskWriter gatheringDiskWriters[],
+            NativeXAFileSystem xaFileSystem) {
+        super(maxDelay, TimeUnit.MILLISECONDS);
+        this.gatheringDiskWriters = gatheringDiskWriters;
+        this.xaFileSystem = xaFileSystem;
+        for (int i = 0; i < gatheringDiskWriters.length; i++) {
+            gatheringDiskWriters[i].setAsynchronousCommitFlusher(this);
+        }
+    }
+
+    @Override
+    void doWorkOnce() {
+        try {
+            for (int i = 0; i < gatheringDiskWriters.length; i++) {
+                ArrayList<TransactionInformation> forcedCommits = gatheringDiskWriters[i].forcePendingAsynchronousCommits();
+                //the commits are now durable; their changes can be applied and their locks released. We
+                //apply them in other threads so that the next force is not held back.
+                for (TransactionInformation xid : forcedCommits) {
+                    CommitApplier commitApplier = new CommitApplier(xid, gatheringDiskWriters[i]);
+                    commitApplyStarts();
+                    try {
+                        xaFileSystem.startWork(commitApplier);
+                    } catch (WorkException we) {
+                        //the work was not accepted, so it will never count itself out; we apply it here.
+                        commitApplyEnds();
+                        commitApplier.applyCommit();
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            xaFileSystem.notifySystemFailure(t);
+        }
+    }
+
+    public void completePendingCommits() throws IOException {
+        for (int i = 0; i < gatheringDiskWriters.length; i++) {
+            ArrayList<TransactionInformation> forcedCommits = gatheringDiskWriters[i].forcePendingAsynchronousCommits();
+            for (TransactionInformation xid : forcedCommits) {
+                new CommitApplier(xid, gatheringDiskWriters[i]).applyCommit();
+            }
+        }
+        try {
+            commitsBeingAppliedLock.lock();
+            while (commitsBeingApplied > 0) {
+                allCommitsApplied.await();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            commitsBeingAppliedLock.unlock();
+        }
+    }
+
+    private void commitApplyStarts() {
+        try {
+            commitsBeingAppliedLock.lock();
+            commitsBeingApplied++;
+        } finally {
+            commitsBeingAppliedLock.unlock();
+        }
+    }
+
+    private void commitApplyEnds() {
+        try {
+            commitsBeingAppliedLock.lock();
+            commitsBeingApplied--;
+            if (commitsBeingApplied == 0) {
+                allCommitsApplied.signalAll();
+            }
+        } finally {
+            commitsBeingAppliedLock.unlock();
+        }
+    }
+
+    @Override
+    public void release() {
+        super.release();
+    }
+
+    @Override
+    public void run() {
+        super.run();
+    }
+
+    private class CommitApplier implements Work {
+
+        private final TransactionInformation xid;
+        private final GatheringDiskWriter gatheringDiskWriter;
+
+        private CommitApplier(TransactionInformation xid, GatheringDiskWriter gatheringDiskWriter) {
+            this.xid = xid;
+            this.gatheringDiskWriter = gatheringDiskWriter;
+        }
+
+        public void release() {
+        }
+
+        public void run() {
+            try {
+                applyCommit();
+            } finally {
+                commitApplyEnds();
+            }
+        }
+
+        private void applyCommit() {
+            NativeSession session = xid.getOwningSession();
+            try {
+                session.completeAsynchronousCommit();
+            } catch (TransactionFailedException tfe) {
+                //the application was told of the commit already; the log is the only place to report this.
+                gatheringDiskWriter.asynchronousCommitFailed();
+                Logger logger = xaFileSystem.getLogger();
+                logger.logError("Could not apply the changes of the asynchronously committed transaction "
+                        + xid + ".");
+                logger.logThrowable(tfe, Logger.ERROR);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.util.concurrent.TimeUnit;
+import org.xadisk.filesystem.NativeXAFileSystem;
+
+public class BufferedLogFlushTrigger extends TimedWorker {
+
+    private static final int ADJUSTMENT_ONLY_INTERVAL = 100;
+    private final NativeXAFileSystem xaFileSystem;
+    private final GatheringDiskWriter gatheringDiskWriters[];
+    private final int maxDelay;
+    private final boolean adaptiveThreshold;
+
+    public BufferedLogFlushTrigger(int maxDelay, boolean adaptiveThreshold, GatheringDiskWriter gatheringDiskWriters[],
+            NativeXAFileSystem xaFileSystem) {
+        //checking a few times within the delay keeps the buffers from waiting much beyond it.
+        super(maxDelay > 0 ? Math.max(1, maxDelay / 4) : ADJUSTMENT_ONLY_INTERVAL, TimeUnit.MILLISECONDS);
+        this.maxDelay = maxDelay;
+        this.adaptiveThreshold = adaptiveThreshold;
+        this.gatheringDiskWriters = gatheringDiskWriters;
+        this.xaFileSystem = xaFileSystem;
+    }
+
+    @Override
+    void doWorkOnce() {
+        try {
+            for (int i = 0; i < gatheringDiskWriters.length; i++) {
+                if (maxDelay > 0) {
+                    gatheringDiskWriters[i].flushIfDelayed(maxDelay);
+                }
+                if (adaptiveThreshold) {
+                    gatheringDiskWriters[i].adjustDiskWriteThreshold();
+                }
+                gatheringDiskWriters[i].forceCompletionRecords();
+            }
+        } catch (Throwable t) {
+            xaFileSystem.notifySystemFailure(t);
+        }
+    }
+
+    @Override
+    public void release() {
+        super.release();
+    }
+
+    @Override
+    public void run() {
+        super.run();
+    }
+}
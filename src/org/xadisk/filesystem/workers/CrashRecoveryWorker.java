@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.resource.spi.work.Work;
 import javax.resource.spi.work.WorkManager;
@@ -33,7 +34,8 @@ public class CrashRecoveryWorker implements Work {
 
     private final NativeXAFileSystem xaFileSystem;
     private final HashMap<TransactionInformation, ArrayList<Long>> transactionLogPositions = new HashMap<TransactionInformation, ArrayList<Long>>(1000);
-    private final HashMap<Integer, FileChannel> logChannels = new HashMap<Integer, FileChannel>(5);
+    //sorted by log index, which keeps the log records of each stripe in their written order.
+    private final TreeMap<Integer, FileChannel> logChannels = new TreeMap<Integer, FileChannel>();
     private final HashSet<TransactionInformation> preparedInDoubtTransactions = new HashSet<TransactionInformation>(1000);
     private final HashSet<TransactionInformation> onePhaseCommittingTransactions = new HashSet<TransactionInformation>(1000);
     private final HashSet<TransactionInformation> heavyWriteTransactionsForRollback = new HashSet<TransactionInformation>(1000);
@@ -41,6 +43,10 @@ public class CrashRecoveryWorker implements Work {
     private volatile boolean logFilesCleaned = false;
     private final HashMap<TransactionInformation, HashSet<File>> transactionsAndFilesWithLatestViewOnDisk = new HashMap<TransactionInformation, HashSet<File>>(1000);
     private final ArrayList<TransactionInformation> committedTransactions = new ArrayList<TransactionInformation>(1000);
+    //the completion records, not always forced, can sit in a log with a smaller index than the records they
+    //complete (a log created after the previous crash); a completed transaction is not brought back by those
+    //records. The value tells if it was committed.
+    private final HashMap<TransactionInformation, Boolean> completedTransactions = new HashMap<TransactionInformation, Boolean>(1000);
     private final HashMap<TransactionInformation, ArrayList<FileSystemStateChangeEvent>> eventsEnqueuePreparedOnly =
             new HashMap<TransactionInformation, ArrayList<FileSystemStateChangeEvent>>(1000);
     private final ArrayList<FileSystemStateChangeEvent> eventsEnqueueCommittedNotDequeued =
@@ -48,6 +54,9 @@ public class CrashRecoveryWorker implements Work {
     private final ArrayList<FileSystemStateChangeEvent> eventsDequeueCommitted = new ArrayList<FileSystemStateChangeEvent>(1000);
     private final HashMap<TransactionInformation, FileSystemStateChangeEvent> eventsDequeuePrepared = new HashMap<TransactionInformation, FileSystemStateChangeEvent>(1000);
     private final HashMap<TransactionInformation, Integer> transactionsLatestCheckPoint = new HashMap<TransactionInformation, Integer>(1000);
+    //for a transaction whose log records are being relocated, the number of its log positions collected
+    //before the relocated copies.
+    private final HashMap<TransactionInformation, Integer> transactionsRelocationMarks = new HashMap<TransactionInformation, Integer>();
     private final ArrayList<EndPointActivation> remoteActivations = new ArrayList<EndPointActivation>();
     private final AtomicInteger distanceFromRecoveryCompletion = new AtomicInteger(0);
 
@@ -56,12 +65,26 @@ public class CrashRecoveryWorker implements Work {
     }
 
     private void collectLogFileNamesToProcess() throws IOException {
-        String logsDir = xaFileSystem.getTransactionLogsDir();
-        String logNames[] = FileIOUtility.listDirectoryContents(new File(logsDir));
-
-        for (int i = 0; i < logNames.length; i++) {
-            int logIndex = Integer.parseInt(logNames[i].split("_")[1]);
-            logChannels.put(logIndex, new FileInputStream(logsDir + File.separator + logNames[i]).getChannel());
+        String transactionLogBaseNames[] = xaFileSystem.getTransactionLogFileBaseNames();
+        for (int stripe = 0; stripe < transactionLogBaseNames.length; stripe++) {
+            File logsDir = new File(transactionLogBaseNames[stripe]).getParentFile();
+            String logNames[] = FileIOUtility.listDirectoryContents(logsDir);
+            String logNamePrefix = new File(transactionLogBaseNames[stripe]).getName() + "_";
+
+            for (int i = 0; i < logNames.length; i++) {
+                if (!logNames[i].startsWith(logNamePrefix)) {
+                    //e.g. spare segments kept by the log preallocator.
+                    continue;
+                }
+                int logIndex = Integer.parseInt(logNames[i].substring(logNamePrefix.length()));
+                if (logIndex % transactionLogBaseNames.length != stripe) {
+                    throw new IOException("The transaction log [" + new File(logsDir, logNames[i])
+                            + "] does not belong to this directory as per the current configuration of "
+                            + "transaction log directories. The transaction log directories should not be "
+                            + "changed while there are transaction logs left for recovery.");
+                }
+                logChannels.put(logIndex, new FileInputStream(new File(logsDir, logNames[i])).getChannel());
+            }
         }
     }
 
@@ -75,7 +98,7 @@ public class CrashRecoveryWorker implements Work {
             int logIndex = (Integer) iter.next();
             FileChannel logFC = (FileChannel) logChannels.get(logIndex);
             logFC.close();
-            xaFileSystem.createDurableDiskSession().deleteFileDurably(new File(xaFileSystem.getTransactionLogFileBaseName() + "_" + logIndex));
+            xaFileSystem.reclaimTransactionLog(logIndex);
         }
     }
 
@@ -102,6 +125,15 @@ public class CrashRecoveryWorker implements Work {
             }
             collectTransactionLogPositions(logChannels.get(logIndex).position(0), logIndex);
         }
+        //a relocation which did not complete before the crash; its copies are ignored, and the original
+        //records, which are reclaimed only after the relocation completes, are used.
+        for (TransactionInformation xid : transactionsRelocationMarks.keySet()) {
+            ArrayList<Long> logPositions = transactionLogPositions.get(xid);
+            int mark = transactionsRelocationMarks.get(xid);
+            while (logPositions != null && logPositions.size() > mark) {
+                logPositions.remove(logPositions.size() - 1);
+            }
+        }
 
         distanceFromRecoveryCompletion.set(preparedInDoubtTransactions.size()
                 + onePhaseCommittingTransactions.size() + eventsDequeuePrepared.size()
@@ -135,8 +167,7 @@ public class CrashRecoveryWorker implements Work {
         TransactionLogEntry logEntry = null;
         while (true) {
             try {
-                logEntry = TransactionLogEntry.getNextTransactionLogEntry(logFC,
-                        logFC.position(), false);
+                logEntry = TransactionLogEntry.getNextVerifiedTransactionLogEntry(logFC, logFC.position());
             } catch (EOFException eofe) {
                 return;
             }
@@ -145,6 +176,17 @@ public class CrashRecoveryWorker implements Work {
             }
             byte operationType = logEntry.getOperationType();
             TransactionInformation xid = logEntry.getXid();
+            if (xid != null && completedTransactions.containsKey(xid)) {
+                if (operationType == TransactionLogEntry.EVENT_ENQUEUE && completedTransactions.get(xid)) {
+                    eventsEnqueueCommittedNotDequeued.addAll(logEntry.getEventList());
+                }
+                if (operationType == TransactionLogEntry.COMMIT_BEGINS || operationType == TransactionLogEntry.PREPARE_COMPLETES
+                        || operationType == TransactionLogEntry.TXN_USES_UNDO_LOGS
+                        || operationType == TransactionLogEntry.PREPARE_COMPLETES_FOR_EVENT_DEQUEUE
+                        || operationType == TransactionLogEntry.EVENT_ENQUEUE) {
+                    continue;
+                }
+            }
             switch (operationType) {
                 case TransactionLogEntry.COMMIT_BEGINS:
                     onePhaseCommittingTransactions.add(xid);
@@ -157,6 +199,7 @@ public class CrashRecoveryWorker implements Work {
                     preparedInDoubtTransactions.remove(xid);
                     heavyWriteTransactionsForRollback.remove(xid);
                     committedTransactions.add(xid);
+                    completedTransactions.put(xid, true);
                     eventsDequeuePrepared.remove(xid);
                     ArrayList<FileSystemStateChangeEvent> events = eventsEnqueuePreparedOnly.remove(xid);
                     if (events != null) {
@@ -167,6 +210,7 @@ public class CrashRecoveryWorker implements Work {
                     onePhaseCommittingTransactions.remove(xid);
                     preparedInDoubtTransactions.remove(xid);
                     heavyWriteTransactionsForRollback.remove(xid);
+                    completedTransactions.put(xid, false);
                     eventsDequeuePrepared.remove(xid);
                     eventsEnqueuePreparedOnly.remove(xid);
                     break;
@@ -204,12 +248,24 @@ public class CrashRecoveryWorker implements Work {
         while (true) {
             long filePositionAtBuffersBeginning = logFC.position();
             try {
-                logEntry = TransactionLogEntry.getNextTransactionLogEntry(logFC,
-                        filePositionAtBuffersBeginning, false);
+                logEntry = TransactionLogEntry.getNextVerifiedTransactionLogEntry(logFC,
+                        filePositionAtBuffersBeginning);
             } catch (EOFException oefe) {
+                //end of the log, or a record torn by the crash; nothing beyond it was acknowledged.
                 return;
             }
             TransactionInformation xid = logEntry.getXid();
+            if (logEntry.getOperationType() == TransactionLogEntry.LOG_RECORDS_RELOCATION_BEGINS) {
+                transactionsRelocationMarks.put(xid, getTransactionLogsPositions(xid).size());
+                continue;
+            }
+            if (logEntry.getOperationType() == TransactionLogEntry.LOG_RECORDS_RELOCATED) {
+                Integer mark = transactionsRelocationMarks.remove(xid);
+                if (mark != null) {
+                    useRelocatedLogPositions(xid, mark, logIndex);
+                }
+                continue;
+            }
             if (onePhaseCommittingTransactions.contains(xid) || preparedInDoubtTransactions.contains(xid)) {
                 if (logEntry.isRedoLogEntry() || logEntry.isUndoLogEntry()) {
                     addLogPositionToTransaction(xid, logIndex, filePositionAtBuffersBeginning);
@@ -229,6 +285,24 @@ public class CrashRecoveryWorker implements Work {
         }
     }
 
+    //the copies, collected after the mark, replace the records collected from the older logs; the records
+    //written to this log before the relocation came after the originals, so they follow the copies.
+    private void useRelocatedLogPositions(TransactionInformation xid, int mark, int logIndex) {
+        ArrayList<Long> logPositions = transactionLogPositions.get(xid);
+        if (logPositions == null) {
+            return;
+        }
+        ArrayList<Long> reorderedLogPositions = new ArrayList<Long>(logPositions.size());
+        reorderedLogPositions.addAll(logPositions.subList(mark, logPositions.size()));
+        for (int i = 0; i < mark; i += 2) {
+            if (logPositions.get(i) == logIndex) {
+                reorderedLogPositions.add(logPositions.get(i));
+                reorderedLogPositions.add(logPositions.get(i + 1));
+            }
+        }
+        transactionLogPositions.put(xid, reorderedLogPositions);
+    }
+
     private void registerRemoteEndpoints() throws IOException {
         for (EndPointActivation activation : remoteActivations) {
             xaFileSystem.registerEndPointActivation(activation);
@@ -0,0 +1,57 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.xadisk.filesystem.NativeXAFileSystem;
+
+class FileTransactionLogChannel extends TransactionLogChannel {
+
+    private final FileChannel logChannel;
+
+    FileTransactionLogChannel(FileChannel logChannel) {
+        this.logChannel = logChannel;
+    }
+
+    long position() throws IOException {
+        return logChannel.position();
+    }
+
+    void write(ByteBuffer buffers[], int offset, int length, long totalBytes) throws IOException {
+        long n = 0;
+        while (n < totalBytes) {
+            n += logChannel.write(buffers, offset, length);
+        }
+    }
+
+    void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+        }
+    }
+
+    void transferFrom(FileChannel source, long sourcePosition, long count) throws IOException {
+        long n = 0;
+        long startingPosition = logChannel.position();
+        source.position(sourcePosition);
+        while (n < count) {
+            n += logChannel.transferFrom(source, startingPosition + n,
+                    NativeXAFileSystem.maxTransferToChannel(count - n));
+        }
+        logChannel.position(startingPosition + n);
+    }
+
+    void force() throws IOException {
+        logChannel.force(false);
+    }
+
+    void close() throws IOException {
+        logChannel.close();
+    }
+}
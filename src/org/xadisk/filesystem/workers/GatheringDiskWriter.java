@@ -7,22 +7,28 @@
 package org.xadisk.filesystem.workers;
 
 import org.xadisk.filesystem.pools.PooledBuffer;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
 import org.xadisk.connector.inbound.EndPointActivation;
 import org.xadisk.filesystem.Buffer;
 import org.xadisk.filesystem.FileSystemStateChangeEvent;
+import org.xadisk.filesystem.NativeSession;
 import org.xadisk.filesystem.NativeXAFileSystem;
 import org.xadisk.filesystem.OnDiskInfo;
 import org.xadisk.filesystem.TransactionLogEntry;
@@ -31,11 +37,35 @@ import org.xadisk.filesystem.utilities.TransactionLogsUtility;
 
 public class GatheringDiskWriter extends EventWorker {
 
-    private final int cumulativeBufferSizeForDiskWrite;
+    private static final int MAPPED_LOG_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_PENDING_ASYNCHRONOUS_COMMITS = 100;
+    private static final int MINIMUM_CONTENT_LENGTH_TO_COMPRESS = 512;
+    private static final int COMMIT_RECORD_BUFFER_SIZE = 256;
+    private static final long TARGET_FLUSH_MICROS = 10000;
+    private static final int MIN_LOGS_BEHIND_FOR_RELOCATION = 2;
+    private volatile int diskWriteThreshold;
+    private final int minimumDiskWriteThreshold;
+    private final int maximumDiskWriteThreshold;
+    private final AtomicLong oldestPendingSubmitTime = new AtomicLong(0);
+    private volatile boolean flushTriggeredByTime = false;
+    private final AtomicLong sizeTriggeredFlushes = new AtomicLong(0);
+    private final AtomicLong timeTriggeredFlushes = new AtomicLong(0);
+    private final AtomicLong commitTriggeredFlushes = new AtomicLong(0);
+    private final AtomicLong ringFullTriggeredFlushes = new AtomicLong(0);
+    //below are guarded by the transactionLogLock, and reset at each adjustment of the threshold.
+    private long flushNanosSinceAdjustment = 0;
+    private int flushesSinceAdjustment = 0;
+    private long sizeTriggeredFlushesAtAdjustment = 0;
+    private final AtomicLong relocatedTransactions = new AtomicLong(0);
+    private final AtomicLong relocatedLogBytes = new AtomicLong(0);
     private final AtomicInteger cumulativeBufferSize = new AtomicInteger(0);
-    private FileChannel transactionLogChannel;
-    private final ConcurrentHashMap<TransactionInformation, ConcurrentLinkedQueue<Buffer>> transactionSubmittedBuffers =
-            new ConcurrentHashMap<TransactionInformation, ConcurrentLinkedQueue<Buffer>>(1000);
+    private TransactionLogChannel transactionLogChannel;
+    private final SubmittedBufferRing submittedBuffers;
+    //below arrays are reused by every write of the submitted buffers, under the transactionLogLock.
+    private final Buffer drainedBuffers[];
+    private final TransactionInformation drainedXids[];
+    private final ByteBuffer drainedByteBuffers[];
+    private final int drainedBuffersToMakeOnDisk[];
     private final NativeXAFileSystem xaFileSystem;
     private final long transactionLogFileMaxSize;
     private final ReentrantLock transactionLogLock = new ReentrantLock(false);
@@ -44,21 +74,84 @@ public class GatheringDiskWriter extends EventWorker {
     private final HashMap<Integer, Integer> transactionLogsAndOpenTransactions = new HashMap<Integer, Integer>(2);
     private final HashMap<TransactionInformation, ArrayList<Integer>> transactionsAndLogsOccupied = new HashMap<TransactionInformation, ArrayList<Integer>>(1000);
     private final long maxNonPooledBufferSize;
+    private final boolean groupCommitEnabled;
+    private final long groupCommitMaxWaitNanos;
+    private final ConcurrentLinkedQueue<ForcedLogRecord> pendingForcedRecords = new ConcurrentLinkedQueue<ForcedLogRecord>();
+    private final AtomicInteger numPendingForcedRecords = new AtomicInteger(0);
+    private final AtomicLong groupCommitBatches = new AtomicLong(0);
+    private final AtomicLong groupCommitRecords = new AtomicLong(0);
+    private volatile int lastGroupCommitBatchSize = 0;
+    private volatile int maxGroupCommitBatchSize = 0;
+    private final TransactionLogPreallocator logPreallocator;
+    private final boolean useMappedTransactionLogs;
+    private final int stripeIndex;
+    private final int numStripes;
+    private ArrayList<TransactionInformation> pendingAsynchronousCommits = new ArrayList<TransactionInformation>();
+    private long oldestPendingAsynchronousCommitTime;
+    private AsynchronousCommitFlusher asynchronousCommitFlusher;
+    //set when a commit-done record has been written without forcing the log; guarded by the transactionLogLock.
+    private volatile boolean unforcedCompletionRecords = false;
+    private GatheringDiskWriter stripeWriters[];
+    private final AtomicLong asynchronousCommits = new AtomicLong(0);
+    private final AtomicLong failedAsynchronousCommits = new AtomicLong(0);
+    private volatile long lastAsynchronousCommitFlushLag = 0;
+    private volatile long maxAsynchronousCommitFlushLag = 0;
+    private final int compressionLevel;
+    private final ThreadLocal<Deflater> deflaters;
+    private final AtomicLong compressedAppendBytesBefore = new AtomicLong(0);
+    private final AtomicLong compressedAppendBytesAfter = new AtomicLong(0);
+    //the commit records are written before the writing thread returns, so each thread can keep reusing one buffer.
+    private static final ThreadLocal<ByteBuffer> commitRecordBuffers = new ThreadLocal<ByteBuffer>() {
+
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(COMMIT_RECORD_BUFFER_SIZE);
+        }
+    };
 
     public GatheringDiskWriter(int cumulativeBufferSizeForDiskWrite, long transactionLogFileMaxSize,
-            long maxNonPooledBufferSize,
-            String transactionLogBaseName, NativeXAFileSystem theXAFileSystem)
+            long maxNonPooledBufferSize, boolean groupCommitEnabled, int groupCommitMaxWait,
+            int submittedBufferRingSize, TransactionLogPreallocator logPreallocator, boolean useMappedTransactionLogs,
+            final int compressionLevel, String transactionLogBaseName, int stripeIndex, int numStripes, NativeXAFileSystem theXAFileSystem)
             throws IOException {
-        this.cumulativeBufferSizeForDiskWrite = cumulativeBufferSizeForDiskWrite;
+        this.diskWriteThreshold = cumulativeBufferSizeForDiskWrite;
+        this.minimumDiskWriteThreshold = Math.max(cumulativeBufferSizeForDiskWrite / 16, 1);
+        this.maximumDiskWriteThreshold = (int) Math.min((long) cumulativeBufferSizeForDiskWrite * 4, Integer.MAX_VALUE);
         this.xaFileSystem = theXAFileSystem;
         this.transactionLogFileMaxSize = transactionLogFileMaxSize;
         this.transactionLogBaseName = transactionLogBaseName;
         this.maxNonPooledBufferSize = maxNonPooledBufferSize;
+        this.groupCommitEnabled = groupCommitEnabled;
+        this.groupCommitMaxWaitNanos = groupCommitMaxWait * 1000000L;
+        int ringCapacity = Integer.highestOneBit(Math.max(submittedBufferRingSize, 2) - 1) << 1;
+        this.submittedBuffers = new SubmittedBufferRing(ringCapacity);
+        this.drainedBuffers = new Buffer[ringCapacity];
+        this.drainedXids = new TransactionInformation[ringCapacity];
+        this.drainedByteBuffers = new ByteBuffer[ringCapacity];
+        this.drainedBuffersToMakeOnDisk = new int[ringCapacity];
+        this.logPreallocator = logPreallocator;
+        this.useMappedTransactionLogs = useMappedTransactionLogs;
+        this.stripeIndex = stripeIndex;
+        this.numStripes = numStripes;
+        this.compressionLevel = compressionLevel;
+        if (compressionLevel > 0) {
+            this.deflaters = new ThreadLocal<Deflater>() {
+
+                @Override
+                protected Deflater initialValue() {
+                    return new Deflater(compressionLevel);
+                }
+            };
+        } else {
+            this.deflaters = null;
+        }
     }
 
     public void initialize() throws IOException {
         File currentTransactionLog = null;
-        for (int i = 0; i < Integer.MAX_VALUE; i++) {
+        //each stripe uses the log indices congruent to its own index, so that a log index alone
+        //identifies the stripe holding that log.
+        for (int i = stripeIndex; i >= 0; i += numStripes) {
             File temp = new File(transactionLogBaseName + "_" + i);
             if (temp.exists()) {
                 continue;
@@ -70,10 +163,38 @@ public class GatheringDiskWriter extends EventWorker {
         if (currentTransactionLog == null) {
             throw new IOException("System has reached its limit on number of transaction logs.");
         }
-        this.transactionLogChannel = new FileOutputStream(currentTransactionLog, false).getChannel();
+        this.transactionLogChannel = openTransactionLog(currentTransactionLog, false);
+    }
+
+    private TransactionLogChannel openTransactionLog(File transactionLog, boolean append) throws IOException {
+        //a preallocated segment comes zero-filled to its full size, so we overwrite it from the beginning; the
+        //recovery stops at the first zero header. Without a spare segment ready, the log just grows as usual.
+        boolean preallocated = logPreallocator != null && logPreallocator.obtainSegment(transactionLog);
+        if (useMappedTransactionLogs) {
+            return new MappedTransactionLogChannel(transactionLog,
+                    (int) Math.min(transactionLogFileMaxSize, MAPPED_LOG_WINDOW_SIZE), transactionLogFileMaxSize,
+                    xaFileSystem.getLogger());
+        }
+        if (preallocated) {
+            return new FileTransactionLogChannel(new RandomAccessFile(transactionLog, "rw").getChannel());
+        }
+        return new FileTransactionLogChannel(new FileOutputStream(transactionLog, append).getChannel());
+    }
+
+    public void reclaimTransactionLog(int logIndex) throws IOException {
+        //a commit-done record not yet durable would leave the recovery redoing that commit without the
+        //records in the reclaimed log.
+        forceCompletionRecords();
+        File transactionLog = new File(transactionLogBaseName + "_" + logIndex);
+        if (logPreallocator == null) {
+            xaFileSystem.createDurableDiskSession().deleteFileDurably(transactionLog);
+        } else {
+            logPreallocator.recycle(transactionLog);
+        }
     }
 
     public void deInitialize() throws IOException {
+        forceCompletionRecords();
         this.transactionLogChannel.close();
     }
 
@@ -81,24 +202,13 @@ public class GatheringDiskWriter extends EventWorker {
     void processEvent() {
         try {
             transactionLogLock.lock();
-            Buffer buffersArray[];
-            TransactionInformation xids[];
-            ArrayList<Buffer> allBuffersToWrite = new ArrayList<Buffer>(1000);
-            ArrayList<TransactionInformation> xidsList = new ArrayList<TransactionInformation>(1000);
-            Iterator<Map.Entry<TransactionInformation, ConcurrentLinkedQueue<Buffer>>> entries = transactionSubmittedBuffers.entrySet().iterator();
-            while (entries.hasNext()) {
-                Map.Entry<TransactionInformation, ConcurrentLinkedQueue<Buffer>> entry = entries.next();
-                TransactionInformation xid = entry.getKey();
-                ConcurrentLinkedQueue<Buffer> txnBuffers = transactionSubmittedBuffers.get(xid);
-                Buffer buffer;
-                while ((buffer = txnBuffers.poll()) != null) {
-                    xidsList.add(xid);
-                    allBuffersToWrite.add(buffer);
-                }
+            if (flushTriggeredByTime) {
+                flushTriggeredByTime = false;
+                timeTriggeredFlushes.incrementAndGet();
+            } else {
+                sizeTriggeredFlushes.incrementAndGet();
             }
-            xids = xidsList.toArray(new TransactionInformation[0]);
-            buffersArray = allBuffersToWrite.toArray(new Buffer[0]);
-            writeBuffersToTransactionLog(buffersArray, xids, 0);
+            writeSubmittedBuffers(0, null);
         } catch (Throwable t) {
             xaFileSystem.notifySystemFailure(t);
         } finally {
@@ -110,15 +220,10 @@ public class GatheringDiskWriter extends EventWorker {
             IOException {
         try {
             transactionLogLock.lock();
-            ConcurrentLinkedQueue<Buffer> txnBuffers = transactionSubmittedBuffers.remove(xid);
-            for (Buffer buffer : txnBuffers) {
-                cumulativeBufferSize.getAndAdd(-buffer.getBuffer().remaining());
-            }
-            TransactionInformation xids[] = new TransactionInformation[txnBuffers.size()];
-            for (int i = 0; i < xids.length; i++) {
-                xids[i] = xid;
-            }
-            writeBuffersToTransactionLog(txnBuffers.toArray(new Buffer[0]), xids, 0);
+            //the buffers of this transaction were all claimed before now; writing everything up to the current
+            //claim sequence covers them, and other transactions' buffers go along in the same write.
+            commitTriggeredFlushes.incrementAndGet();
+            writeSubmittedBuffers(submittedBuffers.getClaimSequence(), null);
         } catch (IOException ioe) {
             xaFileSystem.notifySystemFailure(ioe);
         } finally {
@@ -126,24 +231,79 @@ public class GatheringDiskWriter extends EventWorker {
         }
     }
 
-    private void writeBuffersToTransactionLog(Buffer buffersArray[], TransactionInformation xids[], int offset) throws IOException {
-        ByteBuffer byteBufferArray[] = new ByteBuffer[buffersArray.length];
+    //must be called with the transactionLogLock held.
+    private void writeSubmittedBuffers(long waitTill, TransactionInformation xidToDiscard) throws IOException {
+        writeSubmittedBuffers(waitTill, xidToDiscard, null, null);
+    }
+
+    //must be called with the transactionLogLock held. The trailing record, if any, goes in the same write as
+    //the last of the drained buffers; it is a log record of the transaction, not a buffer of its session.
+    private void writeSubmittedBuffers(long waitTill, TransactionInformation xidToDiscard,
+            ByteBuffer trailingRecord, TransactionInformation trailingXid) throws IOException {
+        //every buffer published till now gets drained below; a later submission records its own time.
+        oldestPendingSubmitTime.set(0);
+        int numDrained;
+        do {
+            numDrained = submittedBuffers.drainTo(drainedBuffers, drainedXids, waitTill);
+            int numToWrite = 0;
+            int sizeDrained = 0;
+            for (int i = 0; i < numDrained; i++) {
+                sizeDrained += drainedBuffers[i].getBuffer().remaining();
+                if (xidToDiscard != null && xidToDiscard.equals(drainedXids[i])) {
+                    continue;
+                }
+                drainedBuffers[numToWrite] = drainedBuffers[i];
+                drainedXids[numToWrite] = drainedXids[i];
+                numToWrite++;
+            }
+            cumulativeBufferSize.getAndAdd(-sizeDrained);
+            //the last drain always leaves a free slot for the trailing record in the arrays.
+            boolean lastDrain = numDrained < drainedBuffers.length;
+            if (numToWrite > 0) {
+                long flushStartTime = System.nanoTime();
+                writeBuffersToTransactionLog(0, numToWrite, lastDrain ? trailingRecord : null, trailingXid);
+                flushNanosSinceAdjustment += System.nanoTime() - flushStartTime;
+                flushesSinceAdjustment++;
+            } else if (lastDrain && trailingRecord != null) {
+                writeBuffersToTransactionLog(0, 0, trailingRecord, trailingXid);
+            }
+            for (int i = 0; i < numDrained; i++) {
+                drainedBuffers[i] = null;
+                drainedXids[i] = null;
+                drainedByteBuffers[i] = null;
+            }
+            if (lastDrain) {
+                drainedByteBuffers[numDrained] = null;
+            }
+        } while (numDrained == drainedBuffers.length);
+    }
+
+    private void writeBuffersToTransactionLog(int offset, int end, ByteBuffer trailingRecord,
+            TransactionInformation trailingXid) throws IOException {
+        Buffer buffersArray[] = drainedBuffers;
+        TransactionInformation xids[] = drainedXids;
+        ByteBuffer byteBufferArray[] = drainedByteBuffers;
         long sizeToWriteNow = 0;
-        int canProcessTill = buffersArray.length - 1;
-        for (int i = offset; i < buffersArray.length; i++) {
-            byteBufferArray[i] = buffersArray[i].getBuffer();
+        int canProcessTill = end - 1;
+        for (int i = offset; i < end; i++) {
+            byteBufferArray[i] = getByteBufferToWrite(buffersArray[i]);
             if (sizeToWriteNow + byteBufferArray[i].remaining() > transactionLogFileMaxSize) {
                 canProcessTill = i - 1;
                 break;
             }
             sizeToWriteNow += byteBufferArray[i].remaining();
         }
+        boolean writeTrailingRecord = trailingRecord != null && canProcessTill == end - 1
+                && sizeToWriteNow + trailingRecord.remaining() <= transactionLogFileMaxSize;
+        if (writeTrailingRecord) {
+            sizeToWriteNow += trailingRecord.remaining();
+        }
         ensureLogFileCapacity(sizeToWriteNow);
         long entryPosition = transactionLogChannel.position();
-        ArrayList<Integer> buffersToMakeOnDisk = new ArrayList<Integer>(1000);
+        int numBuffersToMakeOnDisk = 0;
         boolean makeCurrentOnDisk;
         for (int i = offset; i <= canProcessTill; i++) {
-            byteBufferArray[i] = buffersArray[i].getBuffer();
+            byteBufferArray[i] = getByteBufferToWrite(buffersArray[i]);
             if (buffersArray[i] instanceof PooledBuffer) {
                 makeCurrentOnDisk = false;
             } else {
@@ -161,7 +321,8 @@ public class GatheringDiskWriter extends EventWorker {
             }
             if (makeCurrentOnDisk) {
                 addLogPositionToTransaction(xids[i], currentLogIndex, entryPosition);
-                buffersToMakeOnDisk.add(i);
+                xids[i].getOwningSession().addOnDiskBufferToTransaction(buffersArray[i]);
+                drainedBuffersToMakeOnDisk[numBuffersToMakeOnDisk++] = i;
                 buffersArray[i].setOnDiskInfo(new OnDiskInfo(currentLogIndex, entryPosition));
             } else {
                 //in both cases:if/else, we need to do the below tracking for log-usages.
@@ -169,21 +330,40 @@ public class GatheringDiskWriter extends EventWorker {
                         transactionLogsAndOpenTransactions, currentLogIndex);
                 addInMemoryBufferToTransaction(xids[i], buffersArray[i]);
             }
+            addLogRecordToTransaction(xids[i], entryPosition, byteBufferArray[i].remaining());
             entryPosition += byteBufferArray[i].remaining();
         }
-        long n = 0;
-        while (n < sizeToWriteNow) {
-            n += transactionLogChannel.write(byteBufferArray, offset, canProcessTill - offset + 1);
+        int numBuffersToWrite = canProcessTill - offset + 1;
+        if (writeTrailingRecord) {
+            byteBufferArray[end] = trailingRecord;
+            TransactionLogsUtility.trackTransactionLogsUsage(trailingXid, transactionsAndLogsOccupied,
+                    transactionLogsAndOpenTransactions, currentLogIndex);
+            addLogRecordToTransaction(trailingXid, entryPosition, trailingRecord.remaining());
+            numBuffersToWrite++;
+        }
+        transactionLogChannel.write(byteBufferArray, offset, numBuffersToWrite, sizeToWriteNow);
+        for (int i = offset; i <= canProcessTill; i++) {
+            buffersArray[i].setCompressedLogEntry(null);
         }
 
-        for (Integer indices : buffersToMakeOnDisk) {
-            Buffer temp = buffersArray[indices];
+        for (int i = 0; i < numBuffersToMakeOnDisk; i++) {
+            Buffer temp = buffersArray[drainedBuffersToMakeOnDisk[i]];
             temp.makeOnDisk(temp.getOnDiskInfo());
         }
 
-        if (canProcessTill < buffersArray.length - 1) {
-            writeBuffersToTransactionLog(buffersArray, xids, canProcessTill + 1);
+        if (canProcessTill < end - 1) {
+            writeBuffersToTransactionLog(canProcessTill + 1, end, trailingRecord, trailingXid);
+        } else if (trailingRecord != null && !writeTrailingRecord) {
+            writeBuffersToTransactionLog(end, end, trailingRecord, trailingXid);
+        }
+    }
+
+    private ByteBuffer getByteBufferToWrite(Buffer buffer) {
+        ByteBuffer compressedLogEntry = buffer.getCompressedLogEntry();
+        if (compressedLogEntry != null) {
+            return compressedLogEntry;
         }
+        return buffer.getBuffer();
     }
 
     private void addLogPositionToTransaction(TransactionInformation xid, int logFileIndex, long localPosition) {
@@ -191,54 +371,203 @@ public class GatheringDiskWriter extends EventWorker {
         TransactionLogsUtility.trackTransactionLogsUsage(xid, transactionsAndLogsOccupied, transactionLogsAndOpenTransactions, logFileIndex);
     }
 
+    //must be called with the transactionLogLock held, for a record in the current log.
+    private void addLogRecordToTransaction(TransactionInformation xid, long position, long length) {
+        NativeSession session = xid.getOwningSession();
+        if (session != null) {
+            session.addLogRecordToTransaction(currentLogIndex, position, length);
+        }
+    }
+
     private void addInMemoryBufferToTransaction(TransactionInformation xid, Buffer buffer) {
         xid.getOwningSession().addInMemoryBufferToTransaction(buffer);
     }
 
     public void submitBuffer(Buffer logEntry, TransactionInformation xid) {
+        if (compressionLevel > 0) {
+            compressFileAppendLogEntry(logEntry);
+        }
         logEntry.flushByteBufferChanges();
         int bufferSizeToAdd = logEntry.getBuffer().remaining();
-        ConcurrentLinkedQueue<Buffer> txnBuffers = transactionSubmittedBuffers.get(xid);
-        if (txnBuffers == null) {
-            txnBuffers = new ConcurrentLinkedQueue<Buffer>();
-            txnBuffers.add(logEntry);
-            transactionSubmittedBuffers.put(xid, txnBuffers);
-        } else {
-            txnBuffers.add(logEntry);
-        }
         int currentCumulativeSize = cumulativeBufferSize.addAndGet(bufferSizeToAdd);
-        raiseEventThreadSafely(currentCumulativeSize);
+        while (!submittedBuffers.offer(logEntry, xid)) {
+            //the ring is full, so this thread writes the submitted buffers itself instead of waiting.
+            try {
+                transactionLogLock.lock();
+                ringFullTriggeredFlushes.incrementAndGet();
+                writeSubmittedBuffers(0, null);
+            } catch (Throwable t) {
+                xaFileSystem.notifySystemFailure(t);
+            } finally {
+                transactionLogLock.unlock();
+            }
+        }
+        if (oldestPendingSubmitTime.get() == 0) {
+            oldestPendingSubmitTime.compareAndSet(0, System.currentTimeMillis());
+        }
+        if (currentCumulativeSize >= diskWriteThreshold) {
+            raiseEvent();
+        }
     }
 
-    private void raiseEventThreadSafely(int currentCumulativeSize) {
-        if (currentCumulativeSize >= cumulativeBufferSizeForDiskWrite) {
-            while (!cumulativeBufferSize.compareAndSet(currentCumulativeSize, 0)) {
-                currentCumulativeSize = cumulativeBufferSize.get();
-                if (currentCumulativeSize < cumulativeBufferSizeForDiskWrite) {
-                    return;
-                }
-            }
+    void flushIfDelayed(long maxDelay) {
+        long oldestSubmitTime = oldestPendingSubmitTime.get();
+        if (oldestSubmitTime != 0 && System.currentTimeMillis() - oldestSubmitTime >= maxDelay) {
+            flushTriggeredByTime = true;
             raiseEvent();
         }
     }
 
+    void adjustDiskWriteThreshold() {
+        long flushNanos;
+        int flushes;
+        long sizeTriggeredFlushesNow = sizeTriggeredFlushes.get();
+        boolean wasSizeTriggered;
+        try {
+            transactionLogLock.lock();
+            flushNanos = flushNanosSinceAdjustment;
+            flushes = flushesSinceAdjustment;
+            flushNanosSinceAdjustment = 0;
+            flushesSinceAdjustment = 0;
+            wasSizeTriggered = sizeTriggeredFlushesNow > sizeTriggeredFlushesAtAdjustment;
+            sizeTriggeredFlushesAtAdjustment = sizeTriggeredFlushesNow;
+        } finally {
+            transactionLogLock.unlock();
+        }
+        int threshold = diskWriteThreshold;
+        if (xaFileSystem.getTotalNonPooledBufferSize() >= maxNonPooledBufferSize * 3 / 4) {
+            //buffers are getting scarce; write them out sooner so that they are released sooner.
+            threshold = threshold / 2;
+        } else if (flushes > 0) {
+            //a write holds the log lock, which the committing transactions also need. Keep the writes
+            //short, and let them grow while they are cheap and the load is filling them up.
+            long averageFlushMicros = flushNanos / flushes / 1000;
+            if (averageFlushMicros > TARGET_FLUSH_MICROS) {
+                threshold -= threshold / 4;
+            } else if (averageFlushMicros < TARGET_FLUSH_MICROS / 4 && wasSizeTriggered) {
+                threshold += threshold / 8;
+            }
+        }
+        diskWriteThreshold = Math.max(minimumDiskWriteThreshold, Math.min(maximumDiskWriteThreshold, threshold));
+    }
+
+    //the compression is done here, in the submitting thread, so that the log writing thread
+    //only pays for the smaller write. The in-memory buffer stays uncompressed.
+    private void compressFileAppendLogEntry(Buffer logEntry) {
+        ByteBuffer buffer = logEntry.getBuffer();
+        if (buffer.get(8) != TransactionLogEntry.FILE_APPEND
+                || buffer.getInt(4) < MINIMUM_CONTENT_LENGTH_TO_COMPRESS) {
+            return;
+        }
+        ByteBuffer compressedLogEntry = TransactionLogEntry.getCompressedLogEntry(buffer, deflaters.get());
+        if (compressedLogEntry != null) {
+            logEntry.setCompressedLogEntry(compressedLogEntry);
+            compressedAppendBytesBefore.addAndGet(buffer.remaining());
+            compressedAppendBytesAfter.addAndGet(compressedLogEntry.remaining());
+        }
+    }
+
+    //the commit record rides in the same write as the remaining buffers of the transaction, and one force
+    //makes them all durable.
     public void transactionCommitBegins(TransactionInformation xid) throws IOException {
-        ByteBuffer temp = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid,
-                TransactionLogEntry.COMMIT_BEGINS));
-        forceWrite(xid, temp);
+        ByteBuffer temp = getCommitRecord(xid, TransactionLogEntry.COMMIT_BEGINS);
+        if (groupCommitEnabled) {
+            groupForceSubmittedBuffers(xid, temp);
+            return;
+        }
+        forceCompletionRecordsOfOtherStripes();
+        try {
+            transactionLogLock.lock();
+            commitTriggeredFlushes.incrementAndGet();
+            writeSubmittedBuffers(submittedBuffers.getClaimSequence(), null, temp, xid);
+            forceLogChannel();
+        } finally {
+            transactionLogLock.unlock();
+        }
+    }
+
+    //for the completion records which only spare the recovery from completing the transaction again, which is
+    //idempotent: after a one-phase commit, whose forced commit-begins record already makes it durable, and, as
+    //with a presumed abort, after a rollback or after a commit which a rollback would not undo. Such a record is
+    //not forced here, and becomes durable with the next force of the log. Every force of another log, and every
+    //reclaim of a log, first makes such records durable, so the recovery never completes a transaction over
+    //the changes of a later one.
+    public void transactionCompletesWithoutForce(TransactionInformation xid, boolean isCommitted) throws IOException {
+        ByteBuffer temp = getCommitRecord(xid, isCommitted ? TransactionLogEntry.TXN_COMMIT_DONE : TransactionLogEntry.TXN_ROLLBACK_DONE);
+        try {
+            transactionLogLock.lock();
+            ensureLogFileCapacity(temp.remaining());
+            long position = transactionLogChannel.position();
+            long length = temp.remaining();
+            transactionLogChannel.write(temp);
+            TransactionLogsUtility.trackTransactionLogsUsage(xid, transactionsAndLogsOccupied,
+                    transactionLogsAndOpenTransactions, currentLogIndex);
+            addLogRecordToTransaction(xid, position, length);
+            unforcedCompletionRecords = true;
+        } finally {
+            transactionLogLock.unlock();
+        }
+    }
+
+    void forceCompletionRecords() throws IOException {
+        if (!unforcedCompletionRecords) {
+            return;
+        }
+        try {
+            transactionLogLock.lock();
+            if (unforcedCompletionRecords) {
+                forceLogChannel();
+            }
+        } finally {
+            transactionLogLock.unlock();
+        }
+    }
+
+    private void forceCompletionRecordsOfOtherStripes() throws IOException {
+        //the activation records written while switching to a new log need not wait for the other stripes; not
+        //taking their locks here also keeps two stripes from waiting on each other.
+        if (stripeWriters == null || transactionLogLock.isHeldByCurrentThread()) {
+            return;
+        }
+        for (int i = 0; i < stripeWriters.length; i++) {
+            if (stripeWriters[i] != this) {
+                stripeWriters[i].forceCompletionRecords();
+            }
+        }
+    }
+
+    public void setStripeWriters(GatheringDiskWriter stripeWriters[]) {
+        this.stripeWriters = stripeWriters;
+    }
+
+    //must be called with the transactionLogLock held.
+    private void forceLogChannel() throws IOException {
+        unforcedCompletionRecords = false;
+        transactionLogChannel.force();
     }
 
     public void transactionCompletes(TransactionInformation xid, boolean isCommitted) throws IOException {
-        ByteBuffer temp = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, isCommitted ? TransactionLogEntry.TXN_COMMIT_DONE : TransactionLogEntry.TXN_ROLLBACK_DONE));
+        ByteBuffer temp = getCommitRecord(xid, isCommitted ? TransactionLogEntry.TXN_COMMIT_DONE : TransactionLogEntry.TXN_ROLLBACK_DONE);
         forceWrite(xid, temp);
     }
 
     public void transactionPrepareCompletes(TransactionInformation xid) throws IOException {
-        ByteBuffer temp = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid,
-                TransactionLogEntry.PREPARE_COMPLETES));
+        ByteBuffer temp = getCommitRecord(xid, TransactionLogEntry.PREPARE_COMPLETES);
         forceWrite(xid, temp);
     }
 
+    private ByteBuffer getCommitRecord(TransactionInformation xid, byte commitStatus) {
+        int length = TransactionLogEntry.getLogEntryLength(xid);
+        if (length > COMMIT_RECORD_BUFFER_SIZE) {
+            return ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid, commitStatus));
+        }
+        ByteBuffer buffer = commitRecordBuffers.get();
+        buffer.clear();
+        TransactionLogEntry.putLogEntry(buffer, xid, commitStatus);
+        buffer.flip();
+        return buffer;
+    }
+
     public void transactionPrepareCompletesForEventDequeue(TransactionInformation xid, FileSystemStateChangeEvent event) throws IOException {
         ArrayList<FileSystemStateChangeEvent> events = new ArrayList<FileSystemStateChangeEvent>(1);
         events.add(event);
@@ -267,9 +596,12 @@ public class GatheringDiskWriter extends EventWorker {
             long contentLength)
             throws IOException {
         long logPosition[] = new long[2];
+        forceCompletionRecordsOfOtherStripes();
+        if (contentLength > 0) {
+            TransactionLogEntry.updateChecksum(logEntryHeader, contents, contentPosition, contentLength);
+        }
         try {
             transactionLogLock.lock();
-            long n = 0;
             long headerSize = logEntryHeader.remaining();
             long totalLogSizeRequiredForThisRequest = headerSize;
             if (contentLength > 0) {
@@ -278,21 +610,13 @@ public class GatheringDiskWriter extends EventWorker {
             ensureLogFileCapacity(totalLogSizeRequiredForThisRequest);
             logPosition[0] = currentLogIndex;
             logPosition[1] = transactionLogChannel.position();
-            while (n < headerSize) {
-                n += transactionLogChannel.write(logEntryHeader);
-            }
+            transactionLogChannel.write(logEntryHeader);
             if (contentLength > 0) {
-                n = 0;
-                long startingPosition = transactionLogChannel.position();
-                contents.position(contentPosition);
-                while (n < contentLength) {
-                    n += transactionLogChannel.transferFrom(contents, startingPosition + n,
-                            NativeXAFileSystem.maxTransferToChannel(contentLength - n));
-                }
-                transactionLogChannel.position(startingPosition + n);
+                transactionLogChannel.transferFrom(contents, contentPosition, contentLength);
             }
-            transactionLogChannel.force(false);
+            forceLogChannel();
             addLogPositionToTransaction(xid, (int) logPosition[0], logPosition[1]);
+            addLogRecordToTransaction(xid, logPosition[1], totalLogSizeRequiredForThisRequest);
             return logPosition;
         } finally {
             transactionLogLock.unlock();
@@ -300,53 +624,265 @@ public class GatheringDiskWriter extends EventWorker {
     }
 
     private void forceWrite(TransactionInformation xid, ByteBuffer buffer) throws IOException {
+        forceCompletionRecordsOfOtherStripes();
+        if (groupCommitEnabled) {
+            groupForceWrite(xid, buffer);
+            return;
+        }
         try {
             transactionLogLock.lock();
-            long n = 0;
-            long sizeToWrite = buffer.remaining();
-            ensureLogFileCapacity(sizeToWrite);
-            while (n < sizeToWrite) {
-                n += transactionLogChannel.write(buffer);
-            }
-            transactionLogChannel.force(false);
+            ensureLogFileCapacity(buffer.remaining());
+            long position = transactionLogChannel.position();
+            long length = buffer.remaining();
+            transactionLogChannel.write(buffer);
+            forceLogChannel();
             if (xid != null) {
                 //xid passed null for ep(De)Activation.
                 TransactionLogsUtility.trackTransactionLogsUsage(xid, transactionsAndLogsOccupied,
                         transactionLogsAndOpenTransactions, currentLogIndex);
+                addLogRecordToTransaction(xid, position, length);
+            }
+        } finally {
+            transactionLogLock.unlock();
+        }
+    }
+
+    private void groupForceWrite(TransactionInformation xid, ByteBuffer buffer) throws IOException {
+        joinGroupForce(new ForcedLogRecord(xid, buffer, false));
+    }
+
+    //the submitted buffers of the transaction get written, before its commit record, by the same holder of
+    //the transactionLogLock which forces the batch; no separate write under the lock is needed.
+    private void groupForceSubmittedBuffers(TransactionInformation xid, ByteBuffer commitRecord) throws IOException {
+        forceCompletionRecordsOfOtherStripes();
+        joinGroupForce(new ForcedLogRecord(xid, commitRecord, true));
+    }
+
+    private void joinGroupForce(ForcedLogRecord record) throws IOException {
+        pendingForcedRecords.offer(record);
+        numPendingForcedRecords.incrementAndGet();
+        try {
+            transactionLogLock.lock();
+            //whoever gets the lock first writes and forces all the records queued till then; the
+            //others find their records already durable when they get the lock.
+            if (!record.durable && record.failure == null) {
+                writeAndForcePendingRecords();
             }
         } finally {
             transactionLogLock.unlock();
         }
+        if (record.failure != null) {
+            IOException ioe = new IOException("The group-commit batch carrying this log record could not be written.");
+            ioe.initCause(record.failure);
+            throw ioe;
+        }
+    }
+
+    private void writeAndForcePendingRecords() throws IOException {
+        if (groupCommitMaxWaitNanos > 0 && numPendingForcedRecords.get() > 1) {
+            //there is contention; wait a little so that more committers can join this batch.
+            LockSupport.parkNanos(groupCommitMaxWaitNanos);
+        }
+        ArrayList<ForcedLogRecord> batch = new ArrayList<ForcedLogRecord>();
+        long sizeToWrite = 0;
+        boolean submittedBuffersToWrite = false;
+        ForcedLogRecord record;
+        while ((record = pendingForcedRecords.poll()) != null) {
+            numPendingForcedRecords.decrementAndGet();
+            batch.add(record);
+            sizeToWrite += record.buffer.remaining();
+            submittedBuffersToWrite |= record.afterSubmittedBuffers;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long position;
+        try {
+            if (submittedBuffersToWrite) {
+                //the buffers of these transactions were all claimed before their records were queued.
+                commitTriggeredFlushes.incrementAndGet();
+                writeSubmittedBuffers(submittedBuffers.getClaimSequence(), null);
+            }
+            ensureLogFileCapacity(sizeToWrite);
+            position = transactionLogChannel.position();
+            ByteBuffer byteBufferArray[] = new ByteBuffer[batch.size()];
+            for (int i = 0; i < byteBufferArray.length; i++) {
+                byteBufferArray[i] = batch.get(i).buffer;
+            }
+            transactionLogChannel.write(byteBufferArray, 0, byteBufferArray.length, sizeToWrite);
+            forceLogChannel();
+        } catch (IOException ioe) {
+            for (ForcedLogRecord failed : batch) {
+                failed.failure = ioe;
+            }
+            throw ioe;
+        }
+        for (ForcedLogRecord written : batch) {
+            if (written.xid != null) {
+                //xid passed null for ep(De)Activation.
+                TransactionLogsUtility.trackTransactionLogsUsage(written.xid, transactionsAndLogsOccupied,
+                        transactionLogsAndOpenTransactions, currentLogIndex);
+                addLogRecordToTransaction(written.xid, position, written.length);
+            }
+            position += written.length;
+            written.durable = true;
+        }
+        groupCommitBatches.incrementAndGet();
+        groupCommitRecords.addAndGet(batch.size());
+        lastGroupCommitBatchSize = batch.size();
+        if (batch.size() > maxGroupCommitBatchSize) {
+            maxGroupCommitBatchSize = batch.size();
+        }
+    }
+
+    void setAsynchronousCommitFlusher(AsynchronousCommitFlusher asynchronousCommitFlusher) {
+        this.asynchronousCommitFlusher = asynchronousCommitFlusher;
+    }
+
+    public void transactionCommitBeginsAsynchronously(TransactionInformation xid) throws IOException {
+        ByteBuffer temp = getCommitRecord(xid, TransactionLogEntry.COMMIT_BEGINS);
+        int numPendingCommits;
+        try {
+            transactionLogLock.lock();
+            commitTriggeredFlushes.incrementAndGet();
+            writeSubmittedBuffers(submittedBuffers.getClaimSequence(), null, temp, xid);
+            if (pendingAsynchronousCommits.isEmpty()) {
+                oldestPendingAsynchronousCommitTime = System.currentTimeMillis();
+            }
+            pendingAsynchronousCommits.add(xid);
+            numPendingCommits = pendingAsynchronousCommits.size();
+        } finally {
+            transactionLogLock.unlock();
+        }
+        asynchronousCommits.incrementAndGet();
+        if (numPendingCommits >= MAX_PENDING_ASYNCHRONOUS_COMMITS) {
+            asynchronousCommitFlusher.wakeUp();
+        }
+    }
+
+    ArrayList<TransactionInformation> forcePendingAsynchronousCommits() throws IOException {
+        ArrayList<TransactionInformation> forcedCommits;
+        long oldestCommitTime;
+        forceCompletionRecordsOfOtherStripes();
+        try {
+            transactionLogLock.lock();
+            if (pendingAsynchronousCommits.isEmpty()) {
+                return pendingAsynchronousCommits;
+            }
+            //the log is forced as a whole, so the records written earlier for these transactions become
+            //durable along with their commit-begin records.
+            forceLogChannel();
+            forcedCommits = pendingAsynchronousCommits;
+            oldestCommitTime = oldestPendingAsynchronousCommitTime;
+            pendingAsynchronousCommits = new ArrayList<TransactionInformation>();
+        } finally {
+            transactionLogLock.unlock();
+        }
+        lastAsynchronousCommitFlushLag = System.currentTimeMillis() - oldestCommitTime;
+        if (lastAsynchronousCommitFlushLag > maxAsynchronousCommitFlushLag) {
+            maxAsynchronousCommitFlushLag = lastAsynchronousCommitFlushLag;
+        }
+        return forcedCommits;
+    }
+
+    public long getAsynchronousCommitCount() {
+        return asynchronousCommits.get();
+    }
+
+    void asynchronousCommitFailed() {
+        failedAsynchronousCommits.incrementAndGet();
+    }
+
+    public long getFailedAsynchronousCommitCount() {
+        return failedAsynchronousCommits.get();
+    }
+
+    public long getLastAsynchronousCommitFlushLag() {
+        return lastAsynchronousCommitFlushLag;
+    }
+
+    public long getMaxAsynchronousCommitFlushLag() {
+        return maxAsynchronousCommitFlushLag;
+    }
+
+    public long getCompressedAppendBytesBefore() {
+        return compressedAppendBytesBefore.get();
+    }
+
+    public long getCompressedAppendBytesAfter() {
+        return compressedAppendBytesAfter.get();
+    }
+
+    public int getDiskWriteThreshold() {
+        return diskWriteThreshold;
+    }
+
+    public long getSizeTriggeredFlushCount() {
+        return sizeTriggeredFlushes.get();
+    }
+
+    public long getTimeTriggeredFlushCount() {
+        return timeTriggeredFlushes.get();
+    }
+
+    public long getCommitTriggeredFlushCount() {
+        return commitTriggeredFlushes.get();
+    }
+
+    public long getRingFullTriggeredFlushCount() {
+        return ringFullTriggeredFlushes.get();
+    }
+
+    public long getGroupCommitBatchCount() {
+        return groupCommitBatches.get();
+    }
+
+    public long getGroupCommitRecordCount() {
+        return groupCommitRecords.get();
+    }
+
+    public int getLastGroupCommitBatchSize() {
+        return lastGroupCommitBatchSize;
+    }
+
+    public int getMaxGroupCommitBatchSize() {
+        return maxGroupCommitBatchSize;
     }
 
     public void cleanupTransactionInfo(TransactionInformation xid) throws IOException {
         try {
             transactionLogLock.lock();
-            TransactionLogsUtility.deleteLogsIfPossible(xid, transactionsAndLogsOccupied, transactionLogsAndOpenTransactions,
-                    currentLogIndex, transactionLogBaseName, xaFileSystem.createDurableDiskSession());
+            ArrayList<Integer> logsNoMoreRequired = TransactionLogsUtility.releaseLogsOccupied(xid, transactionsAndLogsOccupied,
+                    transactionLogsAndOpenTransactions, currentLogIndex);
             transactionsAndLogsOccupied.remove(xid);
+            for (Integer logIndex : logsNoMoreRequired) {
+                reclaimTransactionLog(logIndex);
+            }
         } finally {
             transactionLogLock.unlock();
         }
     }
 
     private void ensureLogFileCapacity(long sizeToWriteNow) throws IOException {
-        if (transactionLogChannel.size() + sizeToWriteNow > transactionLogFileMaxSize) {
+        if (transactionLogChannel.position() + sizeToWriteNow > transactionLogFileMaxSize) {
             File nextTransactionLog = null;
-            for (int i = currentLogIndex + 1; i < Integer.MAX_VALUE; i++) {
+            for (int i = currentLogIndex + numStripes; i >= 0; i += numStripes) {
                 File f = new File(transactionLogBaseName + "_" + i);
                 if (f.exists()) {
                     continue;
                 }
                 nextTransactionLog = f;
-                transactionLogChannel.force(false);
+                forceLogChannel();
                 transactionLogChannel.close();
-                transactionLogChannel =
-                        new FileOutputStream(nextTransactionLog, true).getChannel();
-                TransactionLogsUtility.deleteLastLogIfPossible(currentLogIndex, transactionLogsAndOpenTransactions,
-                        transactionLogBaseName, xaFileSystem.createDurableDiskSession());
+                transactionLogChannel = openTransactionLog(nextTransactionLog, true);
+                if (TransactionLogsUtility.releaseLastLogIfPossible(currentLogIndex, transactionLogsAndOpenTransactions)) {
+                    reclaimTransactionLog(currentLogIndex);
+                }
                 currentLogIndex = i;
-                recordAllActivationsInNewLog();
+                if (stripeIndex == 0) {
+                    //activations are recorded only in the first stripe.
+                    recordAllActivationsInNewLog();
+                }
                 break;
             }
             if (nextTransactionLog == null) {
@@ -355,15 +891,186 @@ public class GatheringDiskWriter extends EventWorker {
         }
     }
 
+    //copies the log records of the open transactions which keep old logs from being reclaimed into the
+    //current log, so that those old logs can be reclaimed.
+    void compactTransactionLogs() throws IOException {
+        ArrayList<TransactionInformation> candidates = new ArrayList<TransactionInformation>();
+        try {
+            transactionLogLock.lock();
+            for (Map.Entry<TransactionInformation, ArrayList<Integer>> entry : transactionsAndLogsOccupied.entrySet()) {
+                for (Integer logIndex : entry.getValue()) {
+                    if ((currentLogIndex - logIndex) / numStripes >= MIN_LOGS_BEHIND_FOR_RELOCATION) {
+                        candidates.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+        } finally {
+            transactionLogLock.unlock();
+        }
+        for (TransactionInformation xid : candidates) {
+            NativeSession session = xid.getOwningSession();
+            if (session == null) {
+                continue;
+            }
+            //a session busy with an operation is left for the next round; it must not read or change its
+            //log positions while we move them.
+            if (!session.getAsynchronousRollbackLock().tryLock()) {
+                continue;
+            }
+            try {
+                if (!session.canRelocateLogRecords()) {
+                    continue;
+                }
+                relocateLogRecords(xid, session);
+            } finally {
+                session.getAsynchronousRollbackLock().unlock();
+            }
+        }
+    }
+
+    //to be called with the session's asynchronousRollbackLock held. Only the current log receives new records,
+    //and the records in the older logs were written completely before the log was switched; so those records
+    //are found from the session without the transactionLogLock, which is then taken only to append their copies.
+    private void relocateLogRecords(TransactionInformation xid, NativeSession session) throws IOException {
+        ArrayList<Integer> oldLogs = new ArrayList<Integer>();
+        int logIndexBefore;
+        try {
+            transactionLogLock.lock();
+            ArrayList<Integer> logsOccupied = transactionsAndLogsOccupied.get(xid);
+            if (logsOccupied == null) {
+                return;
+            }
+            for (Integer logIndex : logsOccupied) {
+                if (logIndex != currentLogIndex) {
+                    oldLogs.add(logIndex);
+                }
+            }
+            logIndexBefore = currentLogIndex;
+        } finally {
+            transactionLogLock.unlock();
+        }
+        if (oldLogs.isEmpty()) {
+            return;
+        }
+        //the marker records of an earlier relocation are not tracked by the session, so only the records
+        //themselves are copied again.
+        ArrayList<long[]> records = session.getLogRecordsInLogs(oldLogs);
+        long recordsLength = 0;
+        for (long record[] : records) {
+            recordsLength += record[2];
+        }
+        ByteBuffer relocationBegins = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid,
+                TransactionLogEntry.LOG_RECORDS_RELOCATION_BEGINS));
+        ByteBuffer relocated = ByteBuffer.wrap(TransactionLogEntry.getLogEntry(xid,
+                TransactionLogEntry.LOG_RECORDS_RELOCATED));
+        long sizeRequired = relocationBegins.remaining() + recordsLength + relocated.remaining();
+        if (sizeRequired > transactionLogFileMaxSize) {
+            return;
+        }
+        HashMap<Integer, FileChannel> oldLogChannels = new HashMap<Integer, FileChannel>(oldLogs.size());
+        try {
+            for (Integer logIndex : oldLogs) {
+                oldLogChannels.put(logIndex, new FileInputStream(transactionLogBaseName + "_" + logIndex).getChannel());
+            }
+            transactionLogLock.lock();
+            try {
+                if (currentLogIndex != logIndexBefore) {
+                    //the log just left behind may hold records of this transaction too; try in the next round.
+                    return;
+                }
+                ensureLogFileCapacity(sizeRequired);
+                if (currentLogIndex != logIndexBefore) {
+                    return;
+                }
+
+                //the recovery takes the copies between these two records in place of the records of this
+                //transaction in the older logs; without the second record, it ignores the copies.
+                transactionLogChannel.write(relocationBegins);
+                HashMap<Integer, HashMap<Long, Long>> relocatedPositions = copyLogRecords(records, oldLogChannels);
+                transactionLogChannel.write(relocated);
+                forceLogChannel();
+
+                session.relocateLogPositions(relocatedPositions, currentLogIndex);
+                TransactionLogsUtility.trackTransactionLogsUsage(xid, transactionsAndLogsOccupied,
+                        transactionLogsAndOpenTransactions, currentLogIndex);
+                for (Integer logIndex : oldLogs) {
+                    if (TransactionLogsUtility.releaseLogOccupied(xid, logIndex, transactionsAndLogsOccupied,
+                            transactionLogsAndOpenTransactions, currentLogIndex)) {
+                        oldLogChannels.remove(logIndex).close();
+                        reclaimTransactionLog(logIndex);
+                    }
+                }
+            } finally {
+                transactionLogLock.unlock();
+            }
+            relocatedTransactions.incrementAndGet();
+            relocatedLogBytes.addAndGet(recordsLength);
+        } finally {
+            for (FileChannel logChannel : oldLogChannels.values()) {
+                logChannel.close();
+            }
+        }
+    }
+
+    //to be called with the transactionLogLock held; returns, for each old log, the new positions of the copied records.
+    private HashMap<Integer, HashMap<Long, Long>> copyLogRecords(ArrayList<long[]> records,
+            HashMap<Integer, FileChannel> oldLogChannels) throws IOException {
+        HashMap<Integer, HashMap<Long, Long>> relocatedPositions = new HashMap<Integer, HashMap<Long, Long>>();
+        for (long record[] : records) {
+            int logIndex = (int) record[0];
+            HashMap<Long, Long> positionsInLog = relocatedPositions.get(logIndex);
+            if (positionsInLog == null) {
+                positionsInLog = new HashMap<Long, Long>();
+                relocatedPositions.put(logIndex, positionsInLog);
+            }
+            positionsInLog.put(record[1], transactionLogChannel.position());
+            transactionLogChannel.transferFrom(oldLogChannels.get(logIndex), record[1], record[2]);
+        }
+        return relocatedPositions;
+    }
+
+    //for each open transaction keeping some older logs from being reclaimed, the total size of those logs.
+    public HashMap<TransactionInformation, Long> getPinnedLogBytesPerTransaction() {
+        HashMap<TransactionInformation, Long> pinnedLogBytes = new HashMap<TransactionInformation, Long>();
+        try {
+            transactionLogLock.lock();
+            for (Map.Entry<TransactionInformation, ArrayList<Integer>> entry : transactionsAndLogsOccupied.entrySet()) {
+                long bytes = 0;
+                for (Integer logIndex : entry.getValue()) {
+                    if (logIndex != currentLogIndex) {
+                        bytes += new File(transactionLogBaseName + "_" + logIndex).length();
+                    }
+                }
+                if (bytes > 0) {
+                    pinnedLogBytes.put(entry.getKey(), bytes);
+                }
+            }
+        } finally {
+            transactionLogLock.unlock();
+        }
+        return pinnedLogBytes;
+    }
+
+    public long getRelocatedTransactionCount() {
+        return relocatedTransactions.get();
+    }
+
+    public long getRelocatedLogBytes() {
+        return relocatedLogBytes.get();
+    }
+
     public void transactionRollbackBegins(TransactionInformation xid) {
         try {
             transactionLogLock.lock();
             //we take the lock to ensure that existing processEvent is complete before we begin iterating over
             //the log-positions in the session.rollback (because a processEvent going in parallel may give us
             //log-positions which are yet to be written to the log).
-            //we also remove all the buffers now to save unnecessary processing by next processEvent; all "urgent"
-            //buffers were anyway persisted immediately, and don't belong to this list.
-            transactionSubmittedBuffers.remove(xid);
+            //we also discard the buffers of this transaction now to save unnecessary processing; all "urgent"
+            //buffers were anyway persisted immediately, and don't belong to the ring.
+            writeSubmittedBuffers(submittedBuffers.getClaimSequence(), xid);
+        } catch (IOException ioe) {
+            xaFileSystem.notifySystemFailure(ioe);
         } finally {
             transactionLogLock.unlock();
         }
@@ -397,4 +1104,22 @@ public class GatheringDiskWriter extends EventWorker {
     public void run() {
         super.run();
     }
+
+    private static class ForcedLogRecord {
+
+        private final TransactionInformation xid;
+        private final ByteBuffer buffer;
+        private final int length;
+        //the submitted buffers are to be written before this record.
+        private final boolean afterSubmittedBuffers;
+        private volatile boolean durable = false;
+        private volatile IOException failure = null;
+
+        private ForcedLogRecord(TransactionInformation xid, ByteBuffer buffer, boolean afterSubmittedBuffers) {
+            this.xid = xid;
+            this.buffer = buffer;
+            this.length = buffer.remaining();
+            this.afterSubmittedBuffers = afterSubmittedBuffers;
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.xadisk.filesystem.utilities.Logger;
+
+class MappedTransactionLogChannel extends TransactionLogChannel {
+
+    private final RandomAccessFile logStream;
+    private final FileChannel logChannel;
+    private final int windowSize;
+    private final long logMaxSize;
+    private final Logger logger;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    //the failure to unmap is the same for every window on a given jvm, so it is reported only once.
+    private static volatile boolean unmapFailureLogged = false;
+
+    MappedTransactionLogChannel(File transactionLog, int windowSize, long logMaxSize, Logger logger)
+            throws IOException {
+        this.logStream = new RandomAccessFile(transactionLog, "rw");
+        this.logChannel = logStream.getChannel();
+        this.windowSize = windowSize;
+        this.logMaxSize = logMaxSize;
+        this.logger = logger;
+        mapWindow(0);
+    }
+
+    private void mapWindow(long position) throws IOException {
+        if (window != null) {
+            window.force();
+            unmap(window);
+        }
+        long size = Math.min(windowSize, logMaxSize - position);
+        if (size <= 0) {
+            throw new IOException("The transaction log has reached its maximum size.");
+        }
+        //mapping beyond the end of the log grows it; the unused tail reads as zeroes, and is cut off on close.
+        window = logChannel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        windowStart = position;
+    }
+
+    //a mapping is otherwise released only when the buffer is garbage collected, which keeps the address space
+    //(and on some platforms, the file) held for long. There is no public api for this, so we go via reflection
+    //and leave the mapping to the collector if that fails.
+    private void unmap(MappedByteBuffer buffer) {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            if (!unmapFailureLogged) {
+                unmapFailureLogged = true;
+                logger.logWarning("Could not unmap a transaction log window; such windows will be released"
+                        + " only on garbage collection.");
+                logger.logThrowable(e, Logger.WARNING);
+            }
+        }
+    }
+
+    long position() throws IOException {
+        return windowStart + window.position();
+    }
+
+    void write(ByteBuffer buffers[], int offset, int length, long totalBytes) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            write(buffers[i]);
+        }
+    }
+
+    void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (!window.hasRemaining()) {
+                mapWindow(position());
+            }
+            if (buffer.remaining() <= window.remaining()) {
+                window.put(buffer);
+            } else {
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + window.remaining());
+                window.put(buffer);
+                buffer.limit(limit);
+            }
+        }
+    }
+
+    void transferFrom(FileChannel source, long sourcePosition, long count) throws IOException {
+        long n = 0;
+        while (n < count) {
+            if (!window.hasRemaining()) {
+                mapWindow(position());
+            }
+            ByteBuffer target = window.slice();
+            target.limit((int) Math.min(target.remaining(), count - n));
+            int numRead = source.read(target, sourcePosition + n);
+            if (numRead == -1) {
+                throw new EOFException();
+            }
+            window.position(window.position() + numRead);
+            n += numRead;
+        }
+    }
+
+    void force() throws IOException {
+        window.force();
+    }
+
+    void close() throws IOException {
+        long logSize = position();
+        window.force();
+        unmap(window);
+        window = null;
+        try {
+            logChannel.truncate(logSize);
+        } finally {
+            logStream.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.xadisk.filesystem.Buffer;
+import org.xadisk.filesystem.TransactionInformation;
+
+//a bounded ring with many producers and one consumer at a time. A producer claims a slot with a CAS on
+//the claim sequence, fills it and then publishes it; the consumer takes the published slots in sequence.
+class SubmittedBufferRing {
+
+    private final int mask;
+    private final Buffer buffers[];
+    private final TransactionInformation xids[];
+    private final AtomicLongArray publishedSequences;
+    private final AtomicLong claimSequence = new AtomicLong(0);
+    private volatile long consumeSequence = 0;
+
+    SubmittedBufferRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity of the ring must be a power of two.");
+        }
+        this.mask = capacity - 1;
+        this.buffers = new Buffer[capacity];
+        this.xids = new TransactionInformation[capacity];
+        this.publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            publishedSequences.set(i, -1);
+        }
+    }
+
+    int capacity() {
+        return buffers.length;
+    }
+
+    //returns false, without waiting, if the ring is full.
+    boolean offer(Buffer buffer, TransactionInformation xid) {
+        long sequence;
+        do {
+            sequence = claimSequence.get();
+            if (sequence - consumeSequence >= buffers.length) {
+                return false;
+            }
+        } while (!claimSequence.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        buffers[slot] = buffer;
+        xids[slot] = xid;
+        publishedSequences.set(slot, sequence);
+        return true;
+    }
+
+    long getClaimSequence() {
+        return claimSequence.get();
+    }
+
+    //moves the published entries, in sequence, into the given arrays and returns their number. The entries
+    //claimed before waitTill are waited for, as their producers are only a few steps away from publishing them.
+    //Only one thread at a time may call this method.
+    int drainTo(Buffer targetBuffers[], TransactionInformation targetXids[], long waitTill) {
+        long sequence = consumeSequence;
+        int numDrained = 0;
+        int maxToDrain = Math.min(targetBuffers.length, buffers.length);
+        while (numDrained < maxToDrain) {
+            int slot = (int) sequence & mask;
+            if (publishedSequences.get(slot) != sequence) {
+                if (sequence < waitTill) {
+                    Thread.yield();
+                    continue;
+                }
+                break;
+            }
+            targetBuffers[numDrained] = buffers[slot];
+            targetXids[numDrained] = xids[slot];
+            buffers[slot] = null;
+            xids[slot] = null;
+            numDrained++;
+            sequence++;
+        }
+        consumeSequence = sequence;
+        return numDrained;
+    }
+}
@@ -14,12 +14,19 @@ import javax.resource.spi.work.Work;
 public abstract class TimedWorker implements Work {
 
     private final int frequency;
+    private final long intervalMillis;
     private final ReentrantLock wakeUpAndDieAlarm = new ReentrantLock(false);
     private final Condition hasBeenReleased = wakeUpAndDieAlarm.newCondition();
     private boolean released = false;
 
     TimedWorker(int frequency) {
         this.frequency = frequency;
+        this.intervalMillis = frequency * 1000L;
+    }
+
+    TimedWorker(long interval, TimeUnit unit) {
+        this.intervalMillis = unit.toMillis(interval);
+        this.frequency = (int) TimeUnit.MILLISECONDS.toSeconds(intervalMillis);
     }
 
     public void release() {
@@ -40,7 +47,7 @@ public abstract class TimedWorker implements Work {
             doWorkOnce();
             try {
                 wakeUpAndDieAlarm.lockInterruptibly();
-                hasBeenReleased.await(frequency * 1000L, TimeUnit.MILLISECONDS);
+                hasBeenReleased.await(intervalMillis, TimeUnit.MILLISECONDS);
             } catch (InterruptedException ie) {
                 Thread.currentThread().interrupt();
                 break;
@@ -50,6 +57,15 @@ public abstract class TimedWorker implements Work {
         }
     }
 
+    void wakeUp() {
+        try {
+            wakeUpAndDieAlarm.lock();
+            hasBeenReleased.signal();
+        } finally {
+            wakeUpAndDieAlarm.unlock();
+        }
+    }
+
     abstract void doWorkOnce();
 
     int getFrequency() {
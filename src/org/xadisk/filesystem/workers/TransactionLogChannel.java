@@ -0,0 +1,26 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+abstract class TransactionLogChannel {
+
+    abstract long position() throws IOException;
+
+    abstract void write(ByteBuffer buffers[], int offset, int length, long totalBytes) throws IOException;
+
+    abstract void write(ByteBuffer buffer) throws IOException;
+
+    abstract void transferFrom(FileChannel source, long sourcePosition, long count) throws IOException;
+
+    abstract void force() throws IOException;
+
+    abstract void close() throws IOException;
+}
@@ -0,0 +1,43 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import org.xadisk.filesystem.NativeXAFileSystem;
+
+public class TransactionLogCompactor extends TimedWorker {
+
+    private final NativeXAFileSystem xaFileSystem;
+    private final GatheringDiskWriter gatheringDiskWriters[];
+
+    public TransactionLogCompactor(int frequency, GatheringDiskWriter gatheringDiskWriters[],
+            NativeXAFileSystem xaFileSystem) {
+        super(frequency);
+        this.gatheringDiskWriters = gatheringDiskWriters;
+        this.xaFileSystem = xaFileSystem;
+    }
+
+    @Override
+    void doWorkOnce() {
+        try {
+            for (int i = 0; i < gatheringDiskWriters.length; i++) {
+                gatheringDiskWriters[i].compactTransactionLogs();
+            }
+        } catch (Throwable t) {
+            xaFileSystem.notifySystemFailure(t);
+        }
+    }
+
+    @Override
+    public void release() {
+        super.release();
+    }
+
+    @Override
+    public void run() {
+        super.run();
+    }
+}
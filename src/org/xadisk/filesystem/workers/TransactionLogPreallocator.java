@@ -0,0 +1,136 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.filesystem.workers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.xadisk.filesystem.NativeXAFileSystem;
+import org.xadisk.filesystem.utilities.FileIOUtility;
+
+public class TransactionLogPreallocator extends EventWorker {
+
+    private static final int MAX_SPARE_SEGMENTS = 2;
+    private static final int ZERO_FILL_CHUNK_SIZE = 1024 * 1024;
+    private final NativeXAFileSystem xaFileSystem;
+    private final String spareSegmentBaseName;
+    private final long segmentSize;
+    private final ByteBuffer zeroes = ByteBuffer.allocateDirect(ZERO_FILL_CHUNK_SIZE);
+    private final ConcurrentLinkedQueue<File> segmentsToZeroFill = new ConcurrentLinkedQueue<File>();
+    private final ConcurrentLinkedQueue<File> readySegments = new ConcurrentLinkedQueue<File>();
+    private final AtomicInteger numSpareSegments = new AtomicInteger(0);
+    private final AtomicInteger nextSpareSegmentName = new AtomicInteger(0);
+
+    public TransactionLogPreallocator(String transactionLogBaseName, long segmentSize,
+            NativeXAFileSystem xaFileSystem) {
+        this.spareSegmentBaseName = transactionLogBaseName + ".spare";
+        this.segmentSize = segmentSize;
+        this.xaFileSystem = xaFileSystem;
+    }
+
+    public void initialize() throws IOException {
+        File spareSegmentsDir = new File(spareSegmentBaseName).getParentFile();
+        String spareSegmentPrefix = new File(spareSegmentBaseName).getName() + "_";
+        String names[] = FileIOUtility.listDirectoryContents(spareSegmentsDir);
+        int maxSpareSegmentName = -1;
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].startsWith(spareSegmentPrefix)) {
+                continue;
+            }
+            int spareSegmentName = Integer.parseInt(names[i].substring(spareSegmentPrefix.length()));
+            maxSpareSegmentName = Math.max(maxSpareSegmentName, spareSegmentName);
+            //we can't know if the zero-filling of this segment had completed before the last shutdown/crash.
+            segmentsToZeroFill.offer(new File(spareSegmentsDir, names[i]));
+            numSpareSegments.incrementAndGet();
+        }
+        nextSpareSegmentName.set(maxSpareSegmentName + 1);
+        raiseEvent();
+    }
+
+    @Override
+    void processEvent() {
+        try {
+            File segment;
+            while ((segment = segmentsToZeroFill.poll()) != null) {
+                zeroFill(segment);
+                readySegments.offer(segment);
+            }
+            if (numSpareSegments.get() == 0) {
+                //keep one segment ready ahead of time for the next log rotation.
+                segment = getNextSpareSegmentFile();
+                numSpareSegments.incrementAndGet();
+                zeroFill(segment);
+                readySegments.offer(segment);
+            }
+        } catch (Throwable t) {
+            xaFileSystem.notifySystemFailure(t);
+        }
+    }
+
+    //returns false when no spare segment is ready; zero-filling a whole segment here would hold up the
+    //log writer, and all the committers behind it, so the caller then goes with a usual growing log.
+    public boolean obtainSegment(File transactionLog) throws IOException {
+        File spareSegment = readySegments.poll();
+        if (spareSegment != null) {
+            numSpareSegments.decrementAndGet();
+            xaFileSystem.createDurableDiskSession().renameFileDurably(spareSegment, transactionLog);
+        }
+        raiseEvent();
+        return spareSegment != null;
+    }
+
+    public void recycle(File transactionLog) throws IOException {
+        if (numSpareSegments.incrementAndGet() > MAX_SPARE_SEGMENTS) {
+            numSpareSegments.decrementAndGet();
+            xaFileSystem.createDurableDiskSession().deleteFileDurably(transactionLog);
+            return;
+        }
+        File spareSegment = getNextSpareSegmentFile();
+        //rename first, so that the recovery never looks at a partially zero-filled log.
+        xaFileSystem.createDurableDiskSession().renameFileDurably(transactionLog, spareSegment);
+        segmentsToZeroFill.offer(spareSegment);
+        raiseEvent();
+    }
+
+    private File getNextSpareSegmentFile() {
+        return new File(spareSegmentBaseName + "_" + nextSpareSegmentName.getAndIncrement());
+    }
+
+    private void zeroFill(File segment) throws IOException {
+        RandomAccessFile segmentStream = new RandomAccessFile(segment, "rw");
+        try {
+            FileChannel segmentChannel = segmentStream.getChannel();
+            if (segmentChannel.size() > segmentSize) {
+                segmentChannel.truncate(segmentSize);
+            }
+            ByteBuffer zeroChunk = zeroes.duplicate();
+            long position = 0;
+            while (position < segmentSize) {
+                zeroChunk.clear();
+                zeroChunk.limit((int) Math.min(ZERO_FILL_CHUNK_SIZE, segmentSize - position));
+                position += segmentChannel.write(zeroChunk, position);
+            }
+            segmentChannel.force(true);
+        } finally {
+            segmentStream.close();
+        }
+    }
+
+    @Override
+    public void release() {
+        super.release();
+    }
+
+    @Override
+    public void run() {
+        super.run();
+    }
+}
@@ -6,23 +6,37 @@
  */
 package org.xadisk.tests.correctness;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
 import org.xadisk.bridge.proxies.impl.RemoteXAFileSystem;
 import org.xadisk.connector.inbound.XADiskActivationSpecImpl;
 import org.xadisk.connector.inbound.EndPointActivation;
 import org.xadisk.filesystem.utilities.FileIOUtility;
 import org.xadisk.bridge.proxies.interfaces.Session;
+import org.xadisk.bridge.proxies.interfaces.XADiskBasicIOOperations;
 import org.xadisk.bridge.proxies.interfaces.XAFileInputStream;
 import org.xadisk.bridge.proxies.interfaces.XAFileOutputStream;
 import org.xadisk.bridge.proxies.interfaces.XAFileSystem;
+import org.xadisk.bridge.proxies.interfaces.XASession;
+import org.xadisk.filesystem.FileSystemConfiguration;
 import org.xadisk.filesystem.NativeXAFileSystem;
 import org.xadisk.filesystem.SessionCommonness;
+import org.xadisk.filesystem.TransactionInformation;
+import org.xadisk.filesystem.TransactionLogEntry;
 import org.xadisk.filesystem.XAFileSystemCommonness;
+import org.xadisk.filesystem.workers.GatheringDiskWriter;
 
 public class CoreXAFileSystemTests {
 
@@ -30,14 +44,36 @@ public class CoreXAFileSystemTests {
 
         testIOOperations, testIOOperationsPostCrash, testDynamicReadWrite,
         testDynamicReadWritePostCrash, testConcurrentMoneyTransfer, testConcurrentMoneyTransferPostCrash,
-        testFileSystemEventing, testFileSystemEventingPostCrash
+        testFileSystemEventing, testFileSystemEventingPostCrash, testLogRelocation, testLogRelocationPostCrash,
+        testTornLogTail, testTornLogTailPostCrash, testCorruptLogTail, testCorruptLogTailPostCrash,
+        testUnloggedRollback, testUnloggedRollbackPostCrash, testLostCommitDone, testLostCommitDonePostCrash,
+        testEarlyCompletionRecord, testEarlyCompletionRecordPostCrash, testCommitStress, testCommitStressPostCrash,
+        testGroupCommitStress, testGroupCommitStressPostCrash, testSmallRingCommitStress,
+        testSmallRingCommitStressPostCrash
     };
+    //these crash their own jvm once their transactions are logged, and the logs are then altered by
+    //prepareLogsForRecovery before the recovery; see TestCoreXAFileSystem.testLogDamage.
+    static final testNames logDamageTests[] = {testNames.testTornLogTail, testNames.testCorruptLogTail,
+        testNames.testUnloggedRollback, testNames.testLostCommitDone, testNames.testEarlyCompletionRecord,
+        testNames.testCommitStress, testNames.testGroupCommitStress, testNames.testSmallRingCommitStress};
+    //the commit stress tests crash in the middle of concurrent commits, and leave the logs as they are.
+    static final testNames commitStressTests[] = {testNames.testCommitStress, testNames.testGroupCommitStress,
+        testNames.testSmallRingCommitStress};
+    static final int committersForCommitStress = 8;
+    static final int durationOfCommitStress = 3000;
+    static final int submittedBufferRingSizeForCommitStress = 8;
+    static final int crashStatus = 101;
     private static final String SEPERATOR = File.separator;
     static Object namesake = new CoreXAFileSystemTests();
     static boolean testProgressive = false;
     static boolean testHighNumber = false;
     static boolean usePessimisticLock = true;
     static final int initialFileSizeForDynamicRWTest = 100000;
+    static final int initialFileSizeForLogRelocationTest = 1000;
+    static final int chunkSizeForLogRelocationTest = 3000;
+    static final int numCommitsBeforeDamagedRecord = 5;
+    static final TransactionInformation xidOfDamagedTransaction =
+            TransactionInformation.getXidInstanceForLocalTransaction(Long.MAX_VALUE);
     private Session ioOperationsSession;
     private File ioOperationsRoot1;
     private File ioOperationsRoot2;
@@ -495,6 +531,549 @@ public class CoreXAFileSystemTests {
         return;
     }
 
+    public void testLogRelocation(String testDirectory) throws Exception {
+        File testDirectoryFile = new File(testDirectory);
+        TestUtility.cleanupDirectory(testDirectoryFile);
+        FileIOUtility.createDirectoriesIfRequired(testDirectoryFile);
+        byte modulo = 111;
+        File heavy = new File(testDirectory + SEPERATOR + "heavy.txt");
+        FileOutputStream fos = new FileOutputStream(heavy);
+        for (int i = 0; i < initialFileSizeForLogRelocationTest; i++) {
+            fos.write(i % modulo);
+        }
+        fos.flush();
+        fos.close();
+
+        XAFileSystem xaFileSystem = TestUtility.getXAFileSystemForTest();
+        GatheringDiskWriter diskWriter = NativeXAFileSystem.getXAFileSystem("local").getTheGatheringDiskWriter();
+        long relocatedBefore = diskWriter.getRelocatedTransactionCount();
+        Session longSession = xaFileSystem.createSessionForLocalTransaction();
+        File longFile = new File(testDirectory + SEPERATOR + "long.txt");
+        longSession.createFile(longFile, false);
+        XAFileOutputStream xosLong = longSession.createXAFileOutputStream(longFile, false);
+        XAFileOutputStream xosHeavy = longSession.createXAFileOutputStream(heavy, true);
+        long longFileSize = 0;
+        int chunkSize = chunkSizeForLogRelocationTest;
+        File truncated = new File(testDirectory + SEPERATOR + "truncated.txt");
+        longSession.createFile(truncated, false);
+        XAFileOutputStream xosTruncated = longSession.createXAFileOutputStream(truncated, false);
+        for (int i = 0; i < chunkSize; i++) {
+            xosTruncated.write(i % modulo);
+        }
+        xosTruncated.close();
+
+        //the short transactions fill up the logs, so the records of the long one get left behind in the
+        //older logs until the compactor relocates them.
+        for (int rounds = 0; diskWriter.getRelocatedTransactionCount() == relocatedBefore; rounds++) {
+            if (rounds == 100) {
+                throw new AssertionFailedException("Log records of the long transaction were not relocated.");
+            }
+            for (long i = longFileSize; i < longFileSize + chunkSize; i++) {
+                xosLong.write((int) (i % modulo));
+                xosHeavy.write((int) ((i + initialFileSizeForLogRelocationTest) % modulo));
+            }
+            longFileSize += chunkSize;
+            xosLong.flush();
+            xosHeavy.flush();
+            for (int i = 0; i < 10; i++) {
+                Session session = xaFileSystem.createSessionForLocalTransaction();
+                File shortFile = new File(testDirectory + SEPERATOR + "short" + rounds + "_" + i + ".txt");
+                session.createFile(shortFile, false);
+                XAFileOutputStream xos = session.createXAFileOutputStream(shortFile, false);
+                xos.write(new byte[5000]);
+                xos.close();
+                session.commit();
+            }
+            if (rounds == 0) {
+                //by now the contents are in the log; the part left after the truncation is read from there.
+                longSession.truncateFile(truncated, chunkSize / 2);
+            }
+            Thread.sleep(300);
+        }
+        //the records holding these contents have moved to a newer log, and the older one is gone.
+        XAFileInputStream xisTruncated = longSession.createXAFileInputStream(truncated);
+        byte truncatedContent[] = new byte[chunkSize];
+        int numRead = 0;
+        int n;
+        while ((n = xisTruncated.read(truncatedContent, numRead, chunkSize - numRead)) > 0) {
+            numRead += n;
+        }
+        xisTruncated.close();
+        if (numRead != chunkSize / 2) {
+            throw new AssertionFailedException("File Content-Length Mismatch: " + truncated);
+        }
+        for (int i = 0; i < numRead; i++) {
+            if (truncatedContent[i] != i % modulo) {
+                throw new AssertionFailedException("File Content Mismatch: " + truncated + " at " + "position " + i);
+            }
+        }
+        for (long i = longFileSize; i < longFileSize + chunkSize; i++) {
+            xosLong.write((int) (i % modulo));
+            xosHeavy.write((int) ((i + initialFileSizeForLogRelocationTest) % modulo));
+        }
+        xosLong.close();
+        xosHeavy.close();
+        ((SessionCommonness) longSession).commit(true);
+
+        verifyLogRelocationPostCommit(heavy, longFile, truncated, chunkSize / 2);
+    }
+
+    public void testLogRelocationPostCrash(String testDirectory) throws Exception {
+        File heavy = new File(testDirectory + SEPERATOR + "heavy.txt");
+        File longFile = new File(testDirectory + SEPERATOR + "long.txt");
+        File truncated = new File(testDirectory + SEPERATOR + "truncated.txt");
+        if (!heavy.exists()) {
+            return;
+        }
+        if (heavy.length() != initialFileSizeForLogRelocationTest) {
+            System.out.println("Assuming it was Commit before crash.");
+            verifyLogRelocationPostCommit(heavy, longFile, truncated, chunkSizeForLogRelocationTest / 2);
+        } else {
+            System.out.println("Assuming it was NO Commit before crash.");
+            if (longFile.exists() || truncated.exists()) {
+                throw new AssertionFailedException("File created by a rolled back transaction exists.");
+            }
+            verifyContent(heavy);
+        }
+    }
+
+    private void verifyLogRelocationPostCommit(File heavy, File longFile, File truncated, long truncatedLength)
+            throws Exception {
+        if (heavy.length() != initialFileSizeForLogRelocationTest + longFile.length()) {
+            throw new AssertionFailedException("File Content-Length Mismatch: " + heavy);
+        }
+        if (truncated.length() != truncatedLength) {
+            throw new AssertionFailedException("File Content-Length Mismatch: " + truncated);
+        }
+        verifyContent(truncated);
+        verifyContent(heavy);
+        verifyContent(longFile);
+    }
+
+    public void testTornLogTail(String testDirectory) throws Exception {
+        commitAndPrepareOneMore(testDirectory);
+    }
+
+    public void testTornLogTailPostCrash(String testDirectory) throws Exception {
+        verifyOnlyCommitsRecovered(testDirectory);
+    }
+
+    public void testCorruptLogTail(String testDirectory) throws Exception {
+        commitAndPrepareOneMore(testDirectory);
+    }
+
+    public void testCorruptLogTailPostCrash(String testDirectory) throws Exception {
+        verifyOnlyCommitsRecovered(testDirectory);
+    }
+
+    private void commitAndPrepareOneMore(String testDirectory) throws Exception {
+        File testDirectoryFile = new File(testDirectory);
+        TestUtility.cleanupDirectory(testDirectoryFile);
+        FileIOUtility.createDirectoriesIfRequired(testDirectoryFile);
+        XAFileSystem xaFileSystem = TestUtility.getXAFileSystemForTest();
+        for (int i = 0; i < numCommitsBeforeDamagedRecord; i++) {
+            Session session = xaFileSystem.createSessionForLocalTransaction();
+            writeNewFile(session, new File(testDirectory + SEPERATOR + "committed" + i + ".txt"), 1000 * (i + 1));
+            session.commit();
+        }
+        //the prepare record of this one is the last record in the log, and gets damaged before the recovery.
+        XASession xaSession = xaFileSystem.createSessionForXATransaction();
+        XAResource xar = xaSession.getXAResource();
+        xar.start(xidOfDamagedTransaction, XAResource.TMNOFLAGS);
+        writeNewFile(xaSession, new File(testDirectory + SEPERATOR + "damaged.txt"), 1000);
+        xar.end(xidOfDamagedTransaction, XAResource.TMSUCCESS);
+        xar.prepare(xidOfDamagedTransaction);
+        crash();
+    }
+
+    private void verifyOnlyCommitsRecovered(String testDirectory) throws Exception {
+        for (int i = 0; i < numCommitsBeforeDamagedRecord; i++) {
+            File committed = new File(testDirectory + SEPERATOR + "committed" + i + ".txt");
+            if (committed.length() != 1000 * (i + 1)) {
+                throw new AssertionFailedException("File Content-Length Mismatch: " + committed);
+            }
+            verifyContent(committed);
+        }
+        if (new File(testDirectory + SEPERATOR + "damaged.txt").exists()) {
+            throw new AssertionFailedException("File created by a transaction with a damaged log record exists.");
+        }
+    }
+
+    public void testUnloggedRollback(String testDirectory) throws Exception {
+        File testDirectoryFile = new File(testDirectory);
+        TestUtility.cleanupDirectory(testDirectoryFile);
+        FileIOUtility.createDirectoriesIfRequired(testDirectoryFile);
+        XAFileSystem xaFileSystem = TestUtility.getXAFileSystemForTest();
+        Session rolledBackSession = xaFileSystem.createSessionForLocalTransaction();
+        writeNewFile(rolledBackSession, new File(testDirectory + SEPERATOR + "rolledBack.txt"), 1000);
+        //the commit writes the records of the other transaction to the log too.
+        Session session = xaFileSystem.createSessionForLocalTransaction();
+        writeNewFile(session, new File(testDirectory + SEPERATOR + "committed0.txt"), 1000);
+        session.commit();
+        //this rollback writes no record at all.
+        rolledBackSession.rollback();
+        session = xaFileSystem.createSessionForLocalTransaction();
+        writeNewFile(session, new File(testDirectory + SEPERATOR + "committed1.txt"), 2000);
+        session.commit();
+        crash();
+    }
+
+    public void testUnloggedRollbackPostCrash(String testDirectory) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            File committed = new File(testDirectory + SEPERATOR + "committed" + i + ".txt");
+            if (committed.length() != 1000 * (i + 1)) {
+                throw new AssertionFailedException("File Content-Length Mismatch: " + committed);
+            }
+            verifyContent(committed);
+        }
+        if (new File(testDirectory + SEPERATOR + "rolledBack.txt").exists()) {
+            throw new AssertionFailedException("File created by a rolled back transaction exists.");
+        }
+    }
+
+    public void testLostCommitDone(String testDirectory) throws Exception {
+        File testDirectoryFile = new File(testDirectory);
+        TestUtility.cleanupDirectory(testDirectoryFile);
+        FileIOUtility.createDirectoriesIfRequired(testDirectoryFile);
+        XASession xaSession = TestUtility.getXAFileSystemForTest().createSessionForXATransaction();
+        XAResource xar = xaSession.getXAResource();
+        xar.start(xidOfDamagedTransaction, XAResource.TMNOFLAGS);
+        writeNewFile(xaSession, new File(testDirectory + SEPERATOR + "committed.txt"), 1000);
+        xar.end(xidOfDamagedTransaction, XAResource.TMSUCCESS);
+        xar.prepare(xidOfDamagedTransaction);
+        //the commit-done record is not forced; it gets dropped before the recovery, as a crash could lose it.
+        xar.commit(xidOfDamagedTransaction, false);
+        crash();
+    }
+
+    public void testLostCommitDonePostCrash(String testDirectory) throws Exception {
+        //the recovery reported the transaction in doubt and it was rolled back, but its changes had already been
+        //applied by the commit and must not be left half undone.
+        File committed = new File(testDirectory + SEPERATOR + "committed.txt");
+        if (committed.length() != 1000) {
+            throw new AssertionFailedException("File Content-Length Mismatch: " + committed);
+        }
+        verifyContent(committed);
+    }
+
+    public void testEarlyCompletionRecord(String testDirectory) throws Exception {
+        File testDirectoryFile = new File(testDirectory);
+        TestUtility.cleanupDirectory(testDirectoryFile);
+        FileIOUtility.createDirectoriesIfRequired(testDirectoryFile);
+        XAFileSystem xaFileSystem = TestUtility.getXAFileSystemForTest();
+        File early = new File(testDirectory + SEPERATOR + "early.txt");
+        Session session = xaFileSystem.createSessionForLocalTransaction();
+        writeNewFile(session, early, 1000);
+        session.commit();
+        session = xaFileSystem.createSessionForLocalTransaction();
+        session.deleteFile(early);
+        session.commit();
+        crash();
+    }
+
+    public void testEarlyCompletionRecordPostCrash(String testDirectory) throws Exception {
+        //the first transaction was complete; bringing it back would create the file again.
+        if (new File(testDirectory + SEPERATOR + "early.txt").exists()) {
+            throw new AssertionFailedException("File created by an already completed transaction exists.");
+        }
+    }
+
+    public void testCommitStress(String testDirectory) throws Exception {
+        commitTillCrash(testDirectory, false);
+    }
+
+    public void testCommitStressPostCrash(String testDirectory) throws Exception {
+        verifyAcknowledgedCommits(testDirectory);
+    }
+
+    public void testGroupCommitStress(String testDirectory) throws Exception {
+        commitTillCrash(testDirectory, false);
+    }
+
+    public void testGroupCommitStressPostCrash(String testDirectory) throws Exception {
+        verifyAcknowledgedCommits(testDirectory);
+    }
+
+    public void testSmallRingCommitStress(String testDirectory) throws Exception {
+        commitTillCrash(testDirectory, true);
+    }
+
+    public void testSmallRingCommitStressPostCrash(String testDirectory) throws Exception {
+        verifyAcknowledgedCommits(testDirectory);
+    }
+
+    private void commitTillCrash(final String testDirectory, boolean expectRingFull) throws Exception {
+        File testDirectoryFile = new File(testDirectory);
+        TestUtility.cleanupDirectory(testDirectoryFile);
+        FileIOUtility.createDirectoriesIfRequired(testDirectoryFile);
+        final XAFileSystem xaFileSystem = TestUtility.getXAFileSystemForTest();
+        GatheringDiskWriter diskWriter = NativeXAFileSystem.getXAFileSystem("local").getTheGatheringDiskWriter();
+        long ringFullFlushesBefore = diskWriter.getRingFullTriggeredFlushCount();
+        final AtomicReferenceArray<Throwable> failures = new AtomicReferenceArray<Throwable>(committersForCommitStress);
+        final AtomicIntegerArray commits = new AtomicIntegerArray(committersForCommitStress);
+        for (int i = 0; i < committersForCommitStress; i++) {
+            final int committer = i;
+            Thread committerThread = new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        //a file name goes here only after its commit has returned; the crash leaves it intact
+                        //as the jvm goes down, not the machine.
+                        FileOutputStream acknowledgements = new FileOutputStream(testDirectory + SEPERATOR
+                                + "acknowledged" + committer + ".txt");
+                        for (int n = 0;; n++) {
+                            String fileName = "c" + committer + "_" + n + ".txt";
+                            Session session = xaFileSystem.createSessionForLocalTransaction();
+                            File file = new File(testDirectory + SEPERATOR + fileName);
+                            session.createFile(file, false);
+                            XAFileOutputStream xos = session.createXAFileOutputStream(file, false);
+                            int length = getLengthForCommitStress(n);
+                            for (int position = 0; position < length; position++) {
+                                xos.write(position % 111);
+                                //each chunk is submitted to the log on its own.
+                                if (position % 100 == 99) {
+                                    xos.flush();
+                                }
+                            }
+                            xos.close();
+                            session.commit();
+                            acknowledgements.write((fileName + "\n").getBytes());
+                            commits.incrementAndGet(committer);
+                        }
+                    } catch (Throwable t) {
+                        failures.set(committer, t);
+                    }
+                }
+            });
+            committerThread.setDaemon(true);
+            committerThread.start();
+        }
+        Thread.sleep(durationOfCommitStress);
+        for (int i = 0; i < committersForCommitStress; i++) {
+            if (failures.get(i) != null) {
+                throw new AssertionFailedException("Committer " + i + " failed due to " + failures.get(i));
+            }
+            if (commits.get(i) == 0) {
+                throw new AssertionFailedException("Committer " + i + " could not commit any transaction.");
+            }
+        }
+        if (expectRingFull && diskWriter.getRingFullTriggeredFlushCount() == ringFullFlushesBefore) {
+            throw new AssertionFailedException("The ring of submitted buffers never got full.");
+        }
+        crash();
+    }
+
+    private void verifyAcknowledgedCommits(String testDirectory) throws Exception {
+        HashSet<String> acknowledgedFiles = new HashSet<String>();
+        for (int i = 0; i < committersForCommitStress; i++) {
+            BufferedReader acknowledgements = new BufferedReader(new FileReader(testDirectory + SEPERATOR
+                    + "acknowledged" + i + ".txt"));
+            try {
+                String fileName;
+                while ((fileName = acknowledgements.readLine()) != null) {
+                    acknowledgedFiles.add(fileName);
+                }
+            } finally {
+                acknowledgements.close();
+            }
+        }
+        for (String fileName : acknowledgedFiles) {
+            if (!new File(testDirectory + SEPERATOR + fileName).exists()) {
+                throw new AssertionFailedException("File of an acknowledged commit is missing: " + fileName);
+            }
+        }
+        //the files of the transactions caught by the crash in the middle of their commits may or may not be
+        //there, but none can be there in part.
+        for (File file : new File(testDirectory).listFiles()) {
+            String fileName = file.getName();
+            if (fileName.startsWith("acknowledged")) {
+                continue;
+            }
+            int n = Integer.parseInt(fileName.substring(fileName.indexOf('_') + 1, fileName.indexOf('.')));
+            if (file.length() != getLengthForCommitStress(n)) {
+                throw new AssertionFailedException("File Content-Length Mismatch: " + file);
+            }
+            verifyContent(file);
+        }
+    }
+
+    private static int getLengthForCommitStress(int n) {
+        return 100 * (1 + n % 20) + n % 7;
+    }
+
+    static boolean isCommitStressTest(testNames testName) {
+        for (testNames commitStressTest : commitStressTests) {
+            if (testName == commitStressTest) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void configureFor(testNames testName, FileSystemConfiguration configuration) {
+        if (testName == testNames.testGroupCommitStress) {
+            configuration.setEnableGroupCommit(true);
+        } else if (testName == testNames.testSmallRingCommitStress) {
+            configuration.setSubmittedBufferRingSize(submittedBufferRingSizeForCommitStress);
+        }
+    }
+
+    static boolean isLogDamageTest(testNames testName) {
+        for (testNames logDamageTest : logDamageTests) {
+            if (testName.name().startsWith(logDamageTest.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //called in the jvm of the recovery, before booting XADisk.
+    static void prepareLogsForRecovery(testNames testName, File xaDiskSystemDirectory) throws Exception {
+        if (isCommitStressTest(testName)) {
+            return;
+        }
+        File transactionLog = TestUtility.getLatestTransactionLog(new File(xaDiskSystemDirectory, "txnlogs"));
+        ArrayList<Long> recordPositions = TestUtility.getLogRecordPositions(transactionLog);
+        long lastRecordStart = recordPositions.get(recordPositions.size() - 2);
+        long lastRecordEnd = recordPositions.get(recordPositions.size() - 1);
+        if (testName == testNames.testTornLogTail || testName == testNames.testCorruptLogTail) {
+            TransactionLogEntry lastRecord = TestUtility.getLogRecord(transactionLog, lastRecordStart);
+            if (lastRecord.getOperationType() != TransactionLogEntry.PREPARE_COMPLETES
+                    || !xidOfDamagedTransaction.equals(lastRecord.getXid())) {
+                throw new AssertionFailedException("The last log record is not the one to damage.");
+            }
+            RandomAccessFile log = new RandomAccessFile(transactionLog, "rw");
+            try {
+                long middleOfRecord = (lastRecordStart + lastRecordEnd) / 2;
+                if (testName == testNames.testTornLogTail) {
+                    //as with a write cut short by the crash.
+                    log.setLength(middleOfRecord);
+                } else {
+                    log.seek(middleOfRecord);
+                    int b = log.read();
+                    log.seek(middleOfRecord);
+                    log.write(b ^ 0xFF);
+                }
+            } finally {
+                log.close();
+            }
+        } else if (testName == testNames.testUnloggedRollback) {
+            HashSet<TransactionInformation> loggedXids = new HashSet<TransactionInformation>();
+            HashSet<TransactionInformation> committedXids = new HashSet<TransactionInformation>();
+            for (int i = 0; i < recordPositions.size() - 1; i++) {
+                TransactionLogEntry record = TestUtility.getLogRecord(transactionLog, recordPositions.get(i));
+                if (record.getOperationType() == TransactionLogEntry.TXN_ROLLBACK_DONE) {
+                    throw new AssertionFailedException("The rollback was recorded in the log.");
+                }
+                if (record.getOperationType() == TransactionLogEntry.COMMIT_BEGINS) {
+                    committedXids.add(record.getXid());
+                }
+                loggedXids.add(record.getXid());
+            }
+            loggedXids.removeAll(committedXids);
+            if (loggedXids.isEmpty()) {
+                throw new AssertionFailedException("The records of the rolled back transaction are not in the log.");
+            }
+        } else if (testName == testNames.testLostCommitDone) {
+            TransactionLogEntry lastRecord = TestUtility.getLogRecord(transactionLog, lastRecordStart);
+            if (lastRecord.getOperationType() != TransactionLogEntry.TXN_COMMIT_DONE
+                    || !xidOfDamagedTransaction.equals(lastRecord.getXid())) {
+                throw new AssertionFailedException("The last log record is not the one to drop.");
+            }
+            RandomAccessFile log = new RandomAccessFile(transactionLog, "rw");
+            try {
+                log.setLength(lastRecordStart);
+            } finally {
+                log.close();
+            }
+        } else if (testName == testNames.testEarlyCompletionRecord) {
+            //the records of the first transaction, up to its commit-begins record, move to a log with a higher
+            //index, and its commit-done record stays alone in the current one, as it happens when the
+            //completion record of a transaction found by the recovery goes to the first free log index. The
+            //records of the second transaction are dropped, as if their log had been reclaimed.
+            int commitBegins = 0;
+            while (TestUtility.getLogRecord(transactionLog, recordPositions.get(commitBegins)).getOperationType()
+                    != TransactionLogEntry.COMMIT_BEGINS) {
+                commitBegins++;
+            }
+            TransactionLogEntry commitBeginsRecord = TestUtility.getLogRecord(transactionLog,
+                    recordPositions.get(commitBegins));
+            TransactionLogEntry commitDoneRecord = TestUtility.getLogRecord(transactionLog,
+                    recordPositions.get(commitBegins + 1));
+            if (commitDoneRecord.getOperationType() != TransactionLogEntry.TXN_COMMIT_DONE
+                    || !commitBeginsRecord.getXid().equals(commitDoneRecord.getXid())) {
+                throw new AssertionFailedException("The commit-begins record is not followed by its commit-done.");
+            }
+            byte recordsTillCommitBegins[] = new byte[(int) (long) recordPositions.get(commitBegins + 1)];
+            byte commitDone[] = new byte[(int) (recordPositions.get(commitBegins + 2)
+                    - recordPositions.get(commitBegins + 1))];
+            RandomAccessFile log = new RandomAccessFile(transactionLog, "rw");
+            try {
+                log.readFully(recordsTillCommitBegins);
+                log.readFully(commitDone);
+                log.setLength(0);
+                log.write(commitDone);
+            } finally {
+                log.close();
+            }
+            String logName = transactionLog.getName();
+            int logIndex = Integer.parseInt(logName.substring(logName.lastIndexOf('_') + 1));
+            FileOutputStream laterLog = new FileOutputStream(new File(transactionLog.getParentFile(),
+                    logName.substring(0, logName.lastIndexOf('_') + 1) + (logIndex + 1)));
+            try {
+                laterLog.write(recordsTillCommitBegins);
+            } finally {
+                laterLog.close();
+            }
+        }
+    }
+
+    //called in the jvm of the recovery, while the recovery waits for the transactions in doubt to get resolved.
+    static void resolveInDoubtTransactions(testNames testName, XAFileSystem xaFileSystem) throws Exception {
+        XAResource xar = xaFileSystem.getXAResourceForRecovery();
+        Xid inDoubtXids[] = xar.recover(XAResource.TMSTARTRSCAN);
+        if (testName == testNames.testLostCommitDone) {
+            if (inDoubtXids.length != 1 || !xidOfDamagedTransaction.equals(inDoubtXids[0])) {
+                throw new AssertionFailedException("The transaction with the lost commit-done is not in doubt.");
+            }
+            //a transaction manager which has forgotten the transaction presumes an abort.
+            xar.rollback(inDoubtXids[0]);
+        } else if (inDoubtXids.length != 0) {
+            throw new AssertionFailedException("Unexpected transactions in doubt: " + inDoubtXids.length);
+        }
+    }
+
+    private static void crash() {
+        //no shutdown of XADisk, and no shutdown hooks.
+        Runtime.getRuntime().halt(crashStatus);
+    }
+
+    private void writeNewFile(XADiskBasicIOOperations session, File file, int length) throws Exception {
+        byte modulo = 111;
+        byte content[] = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i % modulo);
+        }
+        session.createFile(file, false);
+        XAFileOutputStream xos = session.createXAFileOutputStream(file, false);
+        xos.write(content);
+        xos.close();
+    }
+
+    private void verifyContent(File file) throws Exception {
+        byte modulo = 111;
+        FileInputStream fis = new FileInputStream(file);
+        long length = file.length();
+        for (long i = 0; i < length; i++) {
+            int b = fis.read();
+            if (b != i % modulo) {
+                fis.close();
+                throw new AssertionFailedException("File Content Mismatch: " + file + " at " + "position " + i);
+            }
+        }
+        fis.close();
+    }
+
     public void resetIOOperationsSession() {
         ioOperationsSession = TestUtility.getXAFileSystemForTest().createSessionForLocalTransaction();
     }
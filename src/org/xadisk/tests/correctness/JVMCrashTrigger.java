@@ -38,13 +38,23 @@ public class JVMCrashTrigger implements Runnable {
     private ThreadReference mainThread = null;
     private String transactionDemarcatingThread;
     private int crashAtBreakpointNumber;
+    private boolean crashDuringLogRelocation;
+    private Method logRelocationMethod = null;
     private ArrayList<Method> interestingMethods = new ArrayList<Method>();
     private HashMap<String, ArrayList<String>> interestingClassesAndMethodNames =
             new HashMap<String, ArrayList<String>>();
 
     public JVMCrashTrigger(VirtualMachine vm, String transactionDemarcatingThread,
             int crashAtBreakpointNumber) {
+        this(vm, transactionDemarcatingThread, crashAtBreakpointNumber, false);
+    }
+
+    //with crashDuringLogRelocation, the vm also exits when the log compactor starts copying the log records
+    //of a transaction, after it has written the marker for the beginning of the relocation.
+    public JVMCrashTrigger(VirtualMachine vm, String transactionDemarcatingThread,
+            int crashAtBreakpointNumber, boolean crashDuringLogRelocation) {
         this.vm = vm;
+        this.crashDuringLogRelocation = crashDuringLogRelocation;
         this.queue = vm.eventQueue();
         this.erManager = vm.eventRequestManager();
         this.transactionDemarcatingThread = transactionDemarcatingThread;
@@ -84,6 +94,9 @@ public class JVMCrashTrigger implements Runnable {
                         BreakpointEvent bpEvent = (BreakpointEvent) event;
                         //refreshStepRequest();
                         System.out.println(bpEvent);
+                        if (bpEvent.location().method().equals(logRelocationMethod)) {
+                            vm.exit(101);
+                        }
                         if (breakPointsEncountered == crashAtBreakpointNumber) {
                             vm.exit(101);
                         }
@@ -97,6 +110,14 @@ public class JVMCrashTrigger implements Runnable {
                                 erManager.deleteEventRequest(cpEvent.request());
                             }
                         }
+                        if (crashDuringLogRelocation && classRef.name().equals(
+                                org.xadisk.filesystem.workers.GatheringDiskWriter.class.getName())) {
+                            //the compactor runs in its own thread, so this breakpoint has no thread filter.
+                            logRelocationMethod = classRef.methodsByName("copyLogRecords").get(0);
+                            BreakpointRequest bpRequest = erManager.createBreakpointRequest(logRelocationMethod.location());
+                            bpRequest.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+                            bpRequest.enable();
+                        }
                     } else if (event instanceof StepEvent) {
                         StepEvent stepEvent = (StepEvent) event;
                         //refreshStepRequest();
@@ -35,6 +35,42 @@ class RunnableTest implements Runnable {
                 coreXAFileSystemTests.testIOOperationsPostCrash(testDirectory);
             } else if (testName.equals(CoreXAFileSystemTests.testNames.testFileSystemEventingPostCrash)) {
                 coreXAFileSystemTests.testFileSystemEventingPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testLogRelocation)) {
+                coreXAFileSystemTests.testLogRelocation(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testLogRelocationPostCrash)) {
+                coreXAFileSystemTests.testLogRelocationPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testTornLogTail)) {
+                coreXAFileSystemTests.testTornLogTail(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testTornLogTailPostCrash)) {
+                coreXAFileSystemTests.testTornLogTailPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testCorruptLogTail)) {
+                coreXAFileSystemTests.testCorruptLogTail(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testCorruptLogTailPostCrash)) {
+                coreXAFileSystemTests.testCorruptLogTailPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testUnloggedRollback)) {
+                coreXAFileSystemTests.testUnloggedRollback(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testUnloggedRollbackPostCrash)) {
+                coreXAFileSystemTests.testUnloggedRollbackPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testLostCommitDone)) {
+                coreXAFileSystemTests.testLostCommitDone(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testLostCommitDonePostCrash)) {
+                coreXAFileSystemTests.testLostCommitDonePostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testEarlyCompletionRecord)) {
+                coreXAFileSystemTests.testEarlyCompletionRecord(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testEarlyCompletionRecordPostCrash)) {
+                coreXAFileSystemTests.testEarlyCompletionRecordPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testCommitStress)) {
+                coreXAFileSystemTests.testCommitStress(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testCommitStressPostCrash)) {
+                coreXAFileSystemTests.testCommitStressPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testGroupCommitStress)) {
+                coreXAFileSystemTests.testGroupCommitStress(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testGroupCommitStressPostCrash)) {
+                coreXAFileSystemTests.testGroupCommitStressPostCrash(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testSmallRingCommitStress)) {
+                coreXAFileSystemTests.testSmallRingCommitStress(testDirectory);
+            } else if (testName.equals(CoreXAFileSystemTests.testNames.testSmallRingCommitStressPostCrash)) {
+                coreXAFileSystemTests.testSmallRingCommitStressPostCrash(testDirectory);
             }
         } catch (Throwable t) {
             System.out.println("Test failed " + testName + " in " + testDirectory + " due to " + t);
@@ -11,6 +11,11 @@ import org.xadisk.filesystem.ConcurrencyControl;
 import org.xadisk.bridge.proxies.interfaces.Session;
 import org.xadisk.bridge.proxies.interfaces.XAFileSystem;
 import org.xadisk.bridge.proxies.interfaces.XAFileSystemProxy;
+import org.xadisk.bridge.proxies.interfaces.XAFileOutputStream;
+import org.xadisk.filesystem.exceptions.AncestorPinnedException;
+import org.xadisk.filesystem.exceptions.DeadLockVictimizedException;
+import org.xadisk.filesystem.exceptions.DirectoryPinningFailedException;
+import org.xadisk.filesystem.exceptions.NoTransactionAssociatedException;
 import org.xadisk.filesystem.standalone.StandaloneFileSystemConfiguration;
 
 public class TestConcurrencyControl {
@@ -36,6 +41,18 @@ public class TestConcurrencyControl {
             testTransactionTimeout(xafs);
             testDeadlock(xafs);
 
+            //a separate instance, so that the periodic detection is slow enough to tell the incremental one apart.
+            StandaloneFileSystemConfiguration configurationIncremental =
+                    new StandaloneFileSystemConfiguration("C:\\xaIncremental", "incremental");
+            configurationIncremental.setDeadLockDetectorInterval(5);
+            configurationIncremental.setEnableIncrementalDeadLockDetection(true);
+            XAFileSystem incrementalXafs = XAFileSystemProxy.bootNativeXAFileSystem(configurationIncremental);
+            incrementalXafs.waitForBootup(-1);
+            testIncrementalDeadlockDetection(incrementalXafs);
+            incrementalXafs.shutdown();
+
+            testDirectoryPinning(xafs);
+
             File rename = new File("C:\\test\\1");
             File delete = new File(rename, "a.txt");
             rename.mkdirs();
@@ -104,7 +121,7 @@ public class TestConcurrencyControl {
         }
     }
 
-    private static void testDeadlock(XAFileSystem xafs) {
+    private static void testDeadlock(XAFileSystem xafs) throws Exception {
         try {
             File f1 = new File("C:\\1.txt");
             File f2 = new File("C:\\2.txt");
@@ -122,6 +139,136 @@ public class TestConcurrencyControl {
         } catch (Exception e) {
             System.err.println(e.getCause());
         }
+
+        //the transactions of the slave are remote ones for the master; their waits are not followed at wait time,
+        //as is the case for a lock busy in some other thread, and the periodic detection has to resolve them.
+        testDeadlockCycle(xafs, new File("C:\\deadlock\\periodic"), 2, false, false);
+    }
+
+    private static void testIncrementalDeadlockDetection(XAFileSystem xafs) throws Exception {
+        //these deadlocks are found among the local transactions as soon as the last of them is about to
+        //wait, well before the periodic detection runs.
+        testDeadlockCycle(xafs, new File("C:\\deadlock\\twoWay"), 2, false, true);
+        testDeadlockCycle(xafs, new File("C:\\deadlock\\upgrade"), 2, true, true);
+        testDeadlockCycle(xafs, new File("C:\\deadlock\\threeWay"), 3, false, true);
+    }
+
+    private static void testDirectoryPinning(XAFileSystem xafs) throws Exception {
+        File root = new File("C:\\pinning");
+        File dir = new File(root, "dir");
+        File subDir = new File(dir, "sub");
+        File file = new File(subDir, "a.txt");
+        File movedDir = new File(root, "moved");
+        File movedRoot = new File("C:\\pinningMoved");
+        subDir.mkdirs();
+        file.createNewFile();
+
+        //a directory cannot be pinned while a lock is held below it.
+        Session lockHolder = xafs.createSessionForLocalTransaction();
+        lockHolder.createXAFileOutputStream(file, false).close();
+        Session pinner = xafs.createSessionForLocalTransaction();
+        pinner.setFileLockWaitTimeout(100);
+        try {
+            pinner.moveFile(dir, movedDir);
+            throw new AssertionFailedException("Pinned a directory while a lock is held below it.");
+        } catch (DirectoryPinningFailedException dpfe) {
+        }
+        pinner.rollback();
+        lockHolder.rollback();
+
+        //nothing below a pinned directory can be locked, and none of its ancestors can be pinned.
+        pinner = xafs.createSessionForLocalTransaction();
+        pinner.moveFile(dir, movedDir);
+        Session locker = xafs.createSessionForLocalTransaction();
+        locker.setFileLockWaitTimeout(100);
+        try {
+            locker.fileExists(file);
+            throw new AssertionFailedException("Locked a file below a pinned directory.");
+        } catch (AncestorPinnedException ape) {
+        }
+        Session ancestorPinner = xafs.createSessionForLocalTransaction();
+        ancestorPinner.setFileLockWaitTimeout(100);
+        try {
+            ancestorPinner.moveFile(root, movedRoot);
+            throw new AssertionFailedException("Pinned an ancestor of a pinned directory.");
+        } catch (DirectoryPinningFailedException dpfe) {
+        }
+        locker.rollback();
+        ancestorPinner.rollback();
+        pinner.rollback();
+
+        //the intentions left on the ancestors by a shared lock are all removed once it has been upgraded and
+        //released, whether the transaction commits or rolls back; else the pinning below would fail.
+        for (int i = 0; i < 2; i++) {
+            Session upgrader = xafs.createSessionForLocalTransaction();
+            upgrader.fileExists(file);
+            XAFileOutputStream xafos = upgrader.createXAFileOutputStream(file, false);
+            xafos.write(1);
+            xafos.close();
+            if (i == 0) {
+                upgrader.commit();
+            } else {
+                upgrader.rollback();
+            }
+            pinner = xafs.createSessionForLocalTransaction();
+            pinner.setFileLockWaitTimeout(100);
+            pinner.moveFile(dir, movedDir);
+            pinner.rollback();
+            ancestorPinner = xafs.createSessionForLocalTransaction();
+            ancestorPinner.setFileLockWaitTimeout(100);
+            ancestorPinner.moveFile(root, movedRoot);
+            ancestorPinner.rollback();
+        }
+    }
+
+    private static void testDeadlockCycle(XAFileSystem xafs, File directory, int numTransactions,
+            boolean upgrade, boolean detectedAtWaitTime) throws Exception {
+        directory.mkdirs();
+        File files[] = new File[numTransactions];
+        for (int i = 0; i < numTransactions; i++) {
+            files[i] = new File(directory, i + ".txt");
+            files[i].createNewFile();
+        }
+        DeadlockParticipant participants[] = new DeadlockParticipant[numTransactions];
+        Thread threads[] = new Thread[numTransactions];
+        for (int i = 0; i < numTransactions; i++) {
+            Session session = xafs.createSessionForLocalTransaction();
+            session.setFileLockWaitTimeout(Integer.MAX_VALUE);
+            if (upgrade) {
+                participants[i] = new DeadlockParticipant(session, files[0], files[0], true);
+            } else {
+                participants[i] = new DeadlockParticipant(session, files[i], files[(i + 1) % numTransactions], false);
+            }
+            threads[i] = new Thread(participants[i]);
+        }
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < numTransactions; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < numTransactions; i++) {
+            threads[i].join();
+        }
+        long timeTaken = System.currentTimeMillis() - startTime;
+
+        int numVictims = 0;
+        int numCommitted = 0;
+        for (int i = 0; i < numTransactions; i++) {
+            if (participants[i].victimized) {
+                numVictims++;
+            }
+            if (participants[i].committed) {
+                numCommitted++;
+            }
+        }
+        System.out.println("Deadlock in " + directory + " resolved in " + timeTaken + " ms.");
+        if (numVictims != 1 || numCommitted != numTransactions - 1) {
+            throw new AssertionFailedException("Deadlock in " + directory + " ended with " + numVictims
+                    + " victims and " + numCommitted + " commits.");
+        }
+        //the participants wait 1 second before closing the cycle; the periodic detection there runs every 5 seconds.
+        if (detectedAtWaitTime && timeTaken > 3000) {
+            throw new AssertionFailedException("Deadlock in " + directory + " was not detected at wait time.");
+        }
     }
 }
 
@@ -191,3 +338,41 @@ class DeleteConcurrently implements Runnable {
         }
     }
 }
+
+class DeadlockParticipant implements Runnable {
+
+    Session session;
+    File firstFile;
+    File secondFile;
+    boolean upgrade;
+    boolean victimized = false;
+    boolean committed = false;
+
+    public DeadlockParticipant(Session session, File firstFile, File secondFile, boolean upgrade) {
+        this.session = session;
+        this.firstFile = firstFile;
+        this.secondFile = secondFile;
+        this.upgrade = upgrade;
+    }
+
+    public void run() {
+        try {
+            if (upgrade) {
+                session.getFileLength(firstFile);
+            } else {
+                session.createXAFileOutputStream(firstFile, false).close();
+            }
+            //so that every participant holds its first lock before any of them asks for the second one.
+            Thread.sleep(1000);
+            XAFileOutputStream xafos = session.createXAFileOutputStream(secondFile, false);
+            xafos.write(1);
+            xafos.close();
+            session.commit();
+            committed = true;
+        } catch (NoTransactionAssociatedException ntae) {
+            victimized = ntae.getCause() instanceof DeadLockVictimizedException;
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
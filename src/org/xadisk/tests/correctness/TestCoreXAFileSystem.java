@@ -29,21 +29,36 @@ public class TestCoreXAFileSystem {
     static int concurrencyLevel = 1;
     static int numberOfCrashes = 100;
     static int maxConcurrentDeliveries = 1;
+    //runs only the log relocation test, with small logs compacted every second.
+    static boolean testLogRelocation = false;
+    //with testLogRelocation, crashes once while the log records are being copied, between the two relocation markers.
+    static boolean crashDuringLogRelocation = false;
+    //runs only the log damage tests, one child jvm for each. The test crashes its jvm itself, and its logs get
+    //damaged, as a crash in the middle of a write would, before the recovery.
+    static boolean testLogDamage = false;
+    //the only test to run in this jvm; one of the log damage tests.
+    private static CoreXAFileSystemTests.testNames singleTest = null;
 
     public static void main(String args[]) {
         try {
             if (args.length > 0 && args[0].equals(forRunningTests)) {
                 System.out.println("Entered into the main of childJVM " + forRunningTests);
+                if (args.length > 1) {
+                    singleTest = CoreXAFileSystemTests.testNames.valueOf(args[1]);
+                }
                 test(false);
                 System.out.println("Exit...");
             } else {
-                if (testCrashRecovery) {
+                if (testLogDamage) {
+                    testLogDamage();
+                } else if (testCrashRecovery) {
                     System.out.println("_____________Start-CrashRecoveryTests______________");
                     for (int i = 1; i <= numberOfCrashes; i++) {
                         TestUtility.cleanupDirectory(new File(XADiskSystemDirectory));
                         TestUtility.cleanupDirectory(new File(topLevelTestDirectory));
                         System.out.println("Raising child JVM for controlled crash...");
-                        Process controlledJVM = powerOnJVMAsDebugeeForCrashes(forRunningTests, i);
+                        Process controlledJVM = powerOnJVMAsDebugeeForCrashes(forRunningTests,
+                                crashDuringLogRelocation ? 0 : i);
                         int status = controlledJVM.waitFor();
                         if (status == 0) {
                             break;
@@ -51,6 +66,9 @@ public class TestCoreXAFileSystem {
                         System.out.println("Crashed!! Status=" + status);
                         test(true);
                         System.out.println("_______________Recovered Successfully______________");
+                        if (crashDuringLogRelocation) {
+                            break;
+                        }
                     }
                 } else {
                     TestUtility.cleanupDirectory(new File(XADiskSystemDirectory));
@@ -63,6 +81,27 @@ public class TestCoreXAFileSystem {
         }
     }
 
+    private static void testLogDamage() throws Exception {
+        System.out.println("_____________Start-LogDamageTests______________");
+        for (CoreXAFileSystemTests.testNames testName : CoreXAFileSystemTests.logDamageTests) {
+            TestUtility.cleanupDirectory(new File(XADiskSystemDirectory));
+            TestUtility.cleanupDirectory(new File(topLevelTestDirectory));
+            System.out.println("Raising child JVM for " + testName + "...");
+            Process controlledJVM = powerOnJVMAsDebugeeForCrashes(forRunningTests + " " + testName, 0);
+            int status = controlledJVM.waitFor();
+            if (status != CoreXAFileSystemTests.crashStatus) {
+                System.out.println("Test failed " + testName + " as the child JVM did not crash. Status=" + status);
+                continue;
+            }
+            System.out.println("Crashed!! Status=" + status);
+            singleTest = testName;
+            CoreXAFileSystemTests.prepareLogsForRecovery(testName, new File(XADiskSystemDirectory));
+            test(true);
+            System.out.println("_______________Recovered Successfully______________");
+        }
+        singleTest = null;
+    }
+
     private static VirtualMachine powerOnJVMAsDebugee(String purpose)
             throws Exception {
         LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
@@ -85,7 +124,8 @@ public class TestCoreXAFileSystem {
     private static Process powerOnJVMAsDebugeeForCrashes(String purpose, int crashAfterBreakpoint)
             throws Exception {
         VirtualMachine vm = powerOnJVMAsDebugee(purpose);
-        new Thread(new JVMCrashTrigger(vm, transactionDemarcatingThread, crashAfterBreakpoint)).start();
+        new Thread(new JVMCrashTrigger(vm, transactionDemarcatingThread, crashAfterBreakpoint,
+                testLogRelocation && crashDuringLogRelocation)).start();
         Process jvmProcess = vm.process();
         initiateOutputProcessing(jvmProcess);
         return jvmProcess;
@@ -103,11 +143,26 @@ public class TestCoreXAFileSystem {
             configuration.setServerAddress("localhost");
             configuration.setServerPort(Configuration.getNextServerPort());
             configuration.setEnableRemoteInvocations(true);
+            if (testLogRelocation) {
+                configuration.setTransactionLogFileMaxSize(100000L);
+                configuration.setTransactionLogCompactionInterval(1);
+                //so that the written contents are held in the logs rather than in memory.
+                configuration.setDirectBufferPoolSize(0);
+                configuration.setNonDirectBufferPoolSize(0);
+                configuration.setMaxNonPooledBufferSize(0L);
+            }
+            if (singleTest != null) {
+                CoreXAFileSystemTests.configureFor(singleTest, configuration);
+            }
             if (postCrash) {
                 //the cleanup of xadisk system dir was failing due to the loaded native-lib from the system dir.
                 configuration.setSynchronizeDirectoryChanges(false);
             }
             NativeXAFileSystem nativeXAFileSystem = NativeXAFileSystem.bootXAFileSystemStandAlone(configuration);
+            if (postCrash && singleTest != null) {
+                //the recovery does not complete till these get resolved.
+                CoreXAFileSystemTests.resolveInDoubtTransactions(singleTest, nativeXAFileSystem);
+            }
             nativeXAFileSystem.waitForBootup(-1);
 
             System.out.println("Recovery over.");
@@ -119,6 +174,14 @@ public class TestCoreXAFileSystem {
             for (int testReplica = 1; testReplica <= concurrencyLevel; testReplica++) {
                 int threadIndex = 0;
                 for (CoreXAFileSystemTests.testNames testName : CoreXAFileSystemTests.testNames.values()) {
+                    if (singleTest != null) {
+                        if (!testName.name().startsWith(singleTest.name())) {
+                            continue;
+                        }
+                    } else if (CoreXAFileSystemTests.isLogDamageTest(testName)
+                            || testName.name().startsWith("testLogRelocation") != testLogRelocation) {
+                        continue;
+                    }
                     if (testName.name().contains("Crash") && postCrash
                             || !testName.name().contains("Crash") && !postCrash) {
                         String testDirectory = testName.toString();
@@ -6,6 +6,7 @@
  */
 package org.xadisk.tests.correctness;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -22,6 +23,7 @@ import org.xadisk.bridge.proxies.interfaces.XAFileSystem;
 import org.xadisk.filesystem.utilities.FileIOUtility;
 import org.xadisk.bridge.proxies.impl.RemoteXAFileSystem;
 import org.xadisk.bridge.proxies.interfaces.XAFileSystemProxy;
+import org.xadisk.filesystem.TransactionLogEntry;
 
 public class TestUtility {
 
@@ -258,4 +260,52 @@ public class TestUtility {
             }
         }
     }
+
+    //the transaction log with the highest index in the given directory, the one written last.
+    public static File getLatestTransactionLog(File transactionLogsDirectory) {
+        File latestLog = null;
+        int latestIndex = -1;
+        String logNamePrefix = "xadisk.log_";
+        for (File log : transactionLogsDirectory.listFiles()) {
+            if (!log.getName().startsWith(logNamePrefix)) {
+                continue;
+            }
+            int index = Integer.parseInt(log.getName().substring(logNamePrefix.length()));
+            if (index > latestIndex) {
+                latestIndex = index;
+                latestLog = log;
+            }
+        }
+        return latestLog;
+    }
+
+    //the positions at which the log records begin, followed by the position at which the last of them ends.
+    public static ArrayList<Long> getLogRecordPositions(File transactionLog) throws IOException {
+        ArrayList<Long> positions = new ArrayList<Long>();
+        FileChannel logChannel = new FileInputStream(transactionLog).getChannel();
+        try {
+            long position = 0;
+            while (true) {
+                positions.add(position);
+                try {
+                    TransactionLogEntry.getNextVerifiedTransactionLogEntry(logChannel, position);
+                } catch (EOFException eofe) {
+                    break;
+                }
+                position = logChannel.position();
+            }
+        } finally {
+            logChannel.close();
+        }
+        return positions;
+    }
+
+    public static TransactionLogEntry getLogRecord(File transactionLog, long position) throws IOException {
+        FileChannel logChannel = new FileInputStream(transactionLog).getChannel();
+        try {
+            return TransactionLogEntry.getNextVerifiedTransactionLogEntry(logChannel, position);
+        } finally {
+            logChannel.close();
+        }
+    }
 }
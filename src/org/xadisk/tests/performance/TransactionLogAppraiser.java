@@ -0,0 +1,105 @@
+/*
+ Copyright © 2010-2014, Nitin Verma (project owner for XADisk https://xadisk.dev.java.net/). All rights reserved.
+
+ This source code is being made available to the public under the terms specified in the license
+ "Eclipse Public License 1.0" located at http://www.opensource.org/licenses/eclipse-1.0.php.
+ */
+package org.xadisk.tests.performance;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+import org.xadisk.bridge.proxies.interfaces.Session;
+import org.xadisk.bridge.proxies.interfaces.XAFileOutputStream;
+import org.xadisk.bridge.proxies.interfaces.XAFileSystem;
+import org.xadisk.bridge.proxies.interfaces.XAFileSystemProxy;
+import org.xadisk.filesystem.standalone.StandaloneFileSystemConfiguration;
+import org.xadisk.filesystem.utilities.FileIOUtility;
+import org.xadisk.tests.correctness.TestUtility;
+
+/**
+ * Compares the transaction log writers (file channel and memory-mapped) using many small
+ * concurrent transactions.
+ * <p> Note that these performance tests are "under construction". Your suggestions about
+ * writing these tests, setting up the system and taking measurements are always welcome.
+ * Thanks.
+ */
+public class TransactionLogAppraiser {
+
+    private static final int TRANSACTIONS_PER_THREAD = 500;
+    private static final int RECORD_SIZE = 200;
+
+    public static void main(String args[]) {
+        try {
+            String xadiskHome = "C:\\xadiskPerformance";
+            File testDirectory = new File("C:\\test");
+            int concurrency = 8;
+            boolean memoryMappedModes[] = {false, true};
+
+            for (boolean memoryMapped : memoryMappedModes) {
+                TestUtility.cleanupDirectory(new File(xadiskHome));
+                FileIOUtility.deleteDirectoryRecursively(testDirectory);
+                FileIOUtility.createDirectory(testDirectory);
+                StandaloneFileSystemConfiguration configuration =
+                        new StandaloneFileSystemConfiguration(xadiskHome, "local");
+                configuration.setTransactionTimeout(Integer.MAX_VALUE);
+                configuration.setPreallocateTransactionLogs(true);
+                configuration.setTransactionLogFileMaxSize(100000000L);
+                configuration.setEnableMemoryMappedTransactionLogs(memoryMapped);
+                XAFileSystem xafs = XAFileSystemProxy.bootNativeXAFileSystem(configuration);
+                xafs.waitForBootup(-1);
+
+                AtomicLong totalTime = new AtomicLong(0);
+                Thread committers[] = new Thread[concurrency];
+                for (int i = 0; i < concurrency; i++) {
+                    committers[i] = new Thread(new SmallTransactionsCommitter(xafs,
+                            new File(testDirectory, i + ""), totalTime));
+                }
+                for (int i = 0; i < concurrency; i++) {
+                    committers[i].start();
+                }
+                for (int i = 0; i < concurrency; i++) {
+                    committers[i].join();
+                }
+                xafs.shutdown();
+                System.out.println((memoryMapped ? "Memory-mapped" : "File channel") + " transaction log writer: "
+                        + totalTime.get() / concurrency + " ms for " + TRANSACTIONS_PER_THREAD
+                        + " transactions per thread.");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class SmallTransactionsCommitter implements Runnable {
+
+        private final XAFileSystem xafs;
+        private final File directory;
+        private final AtomicLong totalTime;
+        private final byte record[] = new byte[RECORD_SIZE];
+
+        private SmallTransactionsCommitter(XAFileSystem xafs, File directory, AtomicLong totalTime) {
+            this.xafs = xafs;
+            this.directory = directory;
+            this.totalTime = totalTime;
+        }
+
+        public void run() {
+            try {
+                FileIOUtility.createDirectory(directory);
+                long startTime = System.currentTimeMillis();
+                for (int i = 0; i < TRANSACTIONS_PER_THREAD; i++) {
+                    Session session = xafs.createSessionForLocalTransaction();
+                    File file = new File(directory, i + "");
+                    session.createFile(file, false);
+                    XAFileOutputStream xafos = session.createXAFileOutputStream(file, false);
+                    xafos.write(record);
+                    xafos.close();
+                    session.commit();
+                }
+                totalTime.addAndGet(System.currentTimeMillis() - startTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}